@@ -1,18 +1,37 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
 /**
  * AbstractVehicle - Base class for all vehicle types.
  * Implements common functionality for vehicles.
+ * Mileage, the hired flag and the inspection flag live in a single state word
+ * that is updated with compare-and-set, so a vehicle can be claimed without locks.
+ * A vehicle held on the heap keeps the state word in one long field; its type
+ * comes from its class and its service distance from the type. A vehicle backed
+ * by VehicleRecords, such as a VehicleStore or the manager's FleetColumns, holds
+ * the records and its record number, and reads its service distance and state
+ * word from its record. Either kind keeps its VehicleID, which never changes, so
+ * the ID and its cached text are not rebuilt on each lookup.
  *
  * @author Ziyue Ren
  * @see Vehicle
  * @see VehicleID
+ * @see VehicleRecords
  */
 
 public abstract class AbstractVehicle implements Vehicle {
     private final VehicleID id;
-    private final String vehicleType;
-    private final int distanceRequirement;
-    private int currentMileage;
-    private boolean isHired;
+    private final VehicleRecords records; // Holds the vehicle's record, or null if the vehicle holds its own values.
+    private volatile long word; // Without records: the state word. With records: the record number, which never changes.
+    private static final VarHandle WORD;
+
+    static {
+        try {
+            WORD = MethodHandles.lookup().findVarHandle(AbstractVehicle.class, "word", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
 
     /**
      * Constructs an abstract vehicle with the specified type.
@@ -23,15 +42,60 @@ public abstract class AbstractVehicle implements Vehicle {
      * @throws IllegalArgumentException if the vehicle type is invalid
      */
     public AbstractVehicle(String vehicleType) {
-        if (!vehicleType.equalsIgnoreCase(VehicleID.CAR) &&
-                !vehicleType.equalsIgnoreCase(VehicleID.VAN)) {
-            throw new IllegalArgumentException("Invalid vehicle type.");
-        }
-        this.vehicleType = vehicleType;
-        id = VehicleID.getInstance(vehicleType); // Generate a unique ID using the factory method.
-        currentMileage = 0;
-        isHired = false;
-        distanceRequirement = vehicleType.equalsIgnoreCase(VehicleID.CAR) ? 10000 : 5000;
+        this(VehicleType.of(vehicleType));
+    }
+
+    /**
+     * Constructs an abstract vehicle of the specified type.
+     * A unique ID is generated using the VehicleID factory method,
+     * and the service distance is taken from the vehicle type.
+     *
+     * @param type the type of the vehicle
+     */
+    protected AbstractVehicle(VehicleType type) {
+        id = VehicleID.getInstance(type); // Generate a unique ID using the factory method.
+        records = null;
+        word = VehicleState.pack(0, false, false);
+    }
+
+    /**
+     * Constructs a view of a vehicle whose ID, service distance and state are held
+     * in a record. The view holds the records, the record number and the ID read from the record.
+     *
+     * @param type    the type of the vehicle
+     * @param records the records holding the vehicle's record
+     * @param record  the record number
+     * @throws IllegalArgumentException if the record holds an ID of another vehicle type
+     */
+    protected AbstractVehicle(VehicleType type, VehicleRecords records, int record) {
+        VehicleID stored = VehicleID.fromPacked(records.packedIdAt(record));
+        if (stored.getType() != type)
+            throw new IllegalArgumentException("Vehicle ID " + stored + " is not a " + type.getName() + " ID.");
+        id = stored;
+        this.records = records;
+        word = record;
+    }
+
+    /**
+     * Reads the state word from the field or the vehicle's record.
+     *
+     * @return The state word.
+     */
+    private long loadState() {
+        return records == null ? word : records.state((int) word);
+    }
+
+    /**
+     * Atomically replaces the state word if it still holds the expected value.
+     *
+     * @param expected The state word the caller read.
+     * @param update   The new state word.
+     * @return True if the state was updated, false if it had changed.
+     */
+    private boolean casState(long expected, long update) {
+        if (records != null)
+            return records.compareAndSetState((int) word, expected, update);
+        return WORD.compareAndSet(this, expected, update);
     }
 
     /**
@@ -51,7 +115,7 @@ public abstract class AbstractVehicle implements Vehicle {
      */
     @Override
     public String getVehicleType() {
-        return vehicleType;
+        return getType().getName();
     }
 
     /**
@@ -61,7 +125,7 @@ public abstract class AbstractVehicle implements Vehicle {
      */
     @Override
     public boolean isHired() {
-        return isHired;
+        return VehicleState.isHired(loadState());
     }
 
     /**
@@ -71,7 +135,7 @@ public abstract class AbstractVehicle implements Vehicle {
      */
     @Override
     public int getDistanceRequirement() {
-        return distanceRequirement;
+        return records == null ? getType().getServiceDistance() : records.distanceAt((int) word);
     }
 
     /**
@@ -81,7 +145,7 @@ public abstract class AbstractVehicle implements Vehicle {
      */
     @Override
     public int getCurrentMileage() {
-        return currentMileage;
+        return VehicleState.mileage(loadState());
     }
 
     /**
@@ -94,7 +158,10 @@ public abstract class AbstractVehicle implements Vehicle {
     public void setCurrentMileage(int mileage) {
         if (mileage < 0) // Ensure mileage is non-negative.
             throw new IllegalArgumentException("Mileage cannot be negative.");
-        this.currentMileage = mileage; // Update the mileage.
+        long current;
+        do {
+            current = loadState();
+        } while (!casState(current, VehicleState.withMileage(current, mileage))); // Update the mileage.
     }
 
     /**
@@ -104,7 +171,117 @@ public abstract class AbstractVehicle implements Vehicle {
      */
     @Override
     public void setHired(boolean flag) {
-        this.isHired = flag;
+        long current;
+        do {
+            current = loadState();
+        } while (!casState(current, VehicleState.withHired(current, flag)));
+    }
+
+    /**
+     * Returns the packed state word of the vehicle.
+     *
+     * @return The state word, decoded with VehicleState.
+     */
+    @Override
+    public long getState() {
+        return loadState();
+    }
+
+    /**
+     * Atomically marks the vehicle as hired if it can be hired.
+     * Fails without retrying if the vehicle is hired, due a service or awaiting an inspection.
+     *
+     * @return True if this call claimed the vehicle, false otherwise.
+     */
+    @Override
+    public boolean tryClaim() {
+        long current;
+        do {
+            current = loadState();
+            if (!VehicleState.isHireable(current, getDistanceRequirement()))
+                return false;
+        } while (!casState(current, VehicleState.withHired(current, true)));
+        return true;
+    }
+
+    /**
+     * Atomically marks the vehicle as not hired. A retired vehicle stays hired.
+     *
+     * @return True if the vehicle was hired and not retired before the call, false otherwise.
+     */
+    @Override
+    public boolean release() {
+        long current;
+        do {
+            current = loadState();
+            if (!VehicleState.isHired(current) || VehicleState.isRetired(current))
+                return false;
+        } while (!casState(current, VehicleState.withHired(current, false)));
+        return true;
+    }
+
+    /**
+     * Atomically marks the vehicle as retired if it is not hired. A retired vehicle
+     * reads as hired from then on, so it can never be claimed, released or pooled.
+     *
+     * @return The state word before the call, or -1 if the vehicle is hired or already retired.
+     */
+    long retire() {
+        long current;
+        do {
+            current = loadState();
+            if (VehicleState.isHired(current))
+                return -1;
+        } while (!casState(current, VehicleState.retired(current)));
+        return current;
+    }
+
+    /**
+     * Returns whether the inspection flag is set.
+     *
+     * @return True if the vehicle needs an inspection, false otherwise.
+     */
+    protected boolean isCheckFlagged() {
+        return VehicleState.needsCheck(loadState());
+    }
+
+    /**
+     * Sets or clears the inspection flag.
+     *
+     * @param flag True to mark the vehicle as needing an inspection, false otherwise.
+     */
+    protected void setCheckFlag(boolean flag) {
+        long current;
+        do {
+            current = loadState();
+        } while (!casState(current, VehicleState.withCheck(current, flag)));
+    }
+
+    /**
+     * Atomically clears the inspection flag if it is set.
+     *
+     * @return True if this call cleared the flag, false if it was not set.
+     */
+    protected boolean clearCheckFlag() {
+        long current;
+        do {
+            current = loadState();
+            if (!VehicleState.needsCheck(current))
+                return false;
+        } while (!casState(current, VehicleState.withCheck(current, false)));
+        return true;
+    }
+
+    /**
+     * Replaces the whole state word, for example when the vehicle is restored from a checkpoint.
+     *
+     * @param state The packed state, see VehicleState.
+     */
+    void restoreState(long state) {
+        if (records == null)
+            word = state;
+        else
+            records.setState((int) word, state);
     }
 
     /**
@@ -116,11 +293,14 @@ public abstract class AbstractVehicle implements Vehicle {
      */
     @Override
     public boolean performServiceIfDue() {
-        if (currentMileage >= distanceRequirement) { // Check if service is due.
-            currentMileage = 0; // Reset mileage after service.
-            return true; // Service performed.
-        }
-        return false; // Service not required.
+        int distanceRequirement = getDistanceRequirement();
+        long current;
+        do {
+            current = loadState();
+            if (VehicleState.mileage(current) < distanceRequirement) // Check if service is due.
+                return false; // Service not required.
+        } while (!casState(current, VehicleState.withMileage(current, 0))); // Reset mileage after service.
+        return true; // Service performed.
     }
 
     /**
@@ -130,6 +310,6 @@ public abstract class AbstractVehicle implements Vehicle {
      */
     @Override
     public String toString() {
-        return vehicleType + " " + id.toString();
+        return getType().getName() + " " + getVehicleID().toString();
     }
 }
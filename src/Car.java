@@ -11,6 +11,26 @@ public final class Car extends AbstractVehicle {
      * Initializes the Car.
      */
     public Car() {
-        super("Car");
+        super(VehicleType.CAR);
+    }
+
+    /**
+     * Constructor for a Car view over a record, such as one in a VehicleStore.
+     *
+     * @param records The records holding the car's record.
+     * @param record  The record number.
+     */
+    Car(VehicleRecords records, int record) {
+        super(VehicleType.CAR, records, record);
+    }
+
+    /**
+     * Returns the type of the vehicle, which is the same for every car.
+     *
+     * @return VehicleType.CAR.
+     */
+    @Override
+    public VehicleType getType() {
+        return VehicleType.CAR;
     }
 }
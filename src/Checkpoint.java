@@ -0,0 +1,292 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Checkpoint - Compact binary files holding the whole fleet state at one journal LSN.
+ * A checkpoint lets startup skip every journal record up to its LSN. Files are
+ * written to a temporary name, forced and then renamed, so a crash never leaves
+ * a partial checkpoint under a real name; a checksum over the whole file guards
+ * against damage. Loading maps the file into memory and decodes it in one pass.
+ * <p>
+ * Layout: a header (magic, format, LSN and the three counts), then fixed-size
+ * vehicle entries (packed ID and state word), customer entries (number, birth,
+ * flags and length-prefixed UTF-8 names) and hire entries (customer number,
+ * packed vehicle ID, start and due times), then a CRC32C of everything before it.
+ *
+ * @author Ziyue Ren
+ * @see Journal
+ * @see FleetSnapshot
+ */
+public final class Checkpoint {
+    /**
+     * Loader - Receives the contents of a checkpoint: every vehicle, then every customer, then every hire.
+     */
+    public interface Loader {
+        /**
+         * Restores a vehicle.
+         *
+         * @param id    The ID of the vehicle.
+         * @param state The vehicle's state word, see VehicleState.
+         */
+        void vehicle(VehicleID id, long state);
+
+        /**
+         * Restores a customer.
+         *
+         * @param customerNum          The customer number.
+         * @param firstName            The first name.
+         * @param lastName             The last name.
+         * @param birthMillis          The date of birth, as milliseconds since the epoch.
+         * @param hasCommercialLicense Whether the customer has a commercial licence.
+         * @param registered           True if the customer was added to the manager.
+         */
+        void customer(int customerNum, String firstName, String lastName, long birthMillis,
+                      boolean hasCommercialLicense, boolean registered);
+
+        /**
+         * Restores a hire. The vehicle's state already marks it as hired.
+         *
+         * @param customerNum The hiring customer.
+         * @param id          The hired vehicle.
+         * @param startMillis When the hire started, in milliseconds since the epoch.
+         * @param dueMillis   When the vehicle is due back, in milliseconds since the epoch.
+         */
+        void hire(int customerNum, VehicleID id, long startMillis, long dueMillis);
+    }
+
+    private static final int MAGIC = 0x464C5443; // "FLTC"
+    private static final int FORMAT = 1;
+    private static final String PREFIX = "checkpoint-";
+    private static final String SUFFIX = ".bin";
+
+    /**
+     * Private constructor; Checkpoint only has static methods.
+     */
+    private Checkpoint() {
+    }
+
+    /**
+     * Writes a checkpoint of a snapshot into a directory, named after the snapshot's journal LSN.
+     *
+     * @param dir      The directory to write to.
+     * @param snapshot The snapshot to write.
+     * @return The path of the checkpoint file.
+     * @throws IOException if the file cannot be written.
+     */
+    public static Path write(Path dir, FleetSnapshot snapshot) throws IOException {
+        long lsn = snapshot.getJournalLsn();
+        Path file = dir.resolve(String.format("%s%019d%s", PREFIX, lsn, SUFFIX));
+        Path tmp = dir.resolve(file.getFileName() + ".tmp");
+
+        // Customers who hired without being added are stored too, flagged as not registered.
+        List<CustomerRecord> registered = snapshot.getCustomers();
+        Set<CustomerRecord> known = new HashSet<>(registered);
+        List<CustomerRecord> unregistered = new ArrayList<>();
+        snapshot.forEachHire((customer, v) -> {
+            if (known.add(customer))
+                unregistered.add(customer);
+        });
+        List<Vehicle> vehicles = snapshot.getAllVehicles();
+
+        CRC32C crc = new CRC32C();
+        try (OutputStream raw = Files.newOutputStream(tmp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new CheckedOutputStream(raw, crc), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT);
+            out.writeLong(lsn);
+            out.writeInt(vehicles.size());
+            out.writeInt(registered.size() + unregistered.size());
+            out.writeInt(snapshot.hiredCount());
+            for (int i = 0; i < vehicles.size(); i++) {
+                out.writeInt(vehicles.get(i).getVehicleID().packed());
+                out.writeLong(snapshot.stateAt(i));
+            }
+            for (CustomerRecord customer : registered)
+                writeCustomer(out, customer, true);
+            for (CustomerRecord customer : unregistered)
+                writeCustomer(out, customer, false);
+            for (HireRecord hire : snapshot.getHireRecords()) {
+                out.writeInt(hire.getCustomer().getCustomerNum());
+                out.writeInt(hire.getVehicle().getVehicleID().packed());
+                out.writeLong(hire.getStartMillis());
+                out.writeLong(hire.getDueMillis());
+            }
+            out.flush();
+            out.writeInt((int) crc.getValue()); // Checksum of everything before it.
+        }
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return file;
+    }
+
+    /**
+     * Writes one customer entry.
+     *
+     * @param out        The stream to write to.
+     * @param customer   The customer.
+     * @param registered True if the customer was added to the manager.
+     * @throws IOException if the entry cannot be written.
+     */
+    private static void writeCustomer(DataOutputStream out, CustomerRecord customer, boolean registered) throws IOException {
+        out.writeInt(customer.getCustomerNum());
+        out.writeLong(customer.getDateOfBirth().getTime());
+        out.writeByte((customer.hasCommercialLicense() ? 1 : 0) | (registered ? 2 : 0));
+        writeString(out, customer.getName().getFirstName());
+        writeString(out, customer.getName().getLastName());
+    }
+
+    /**
+     * Writes a length-prefixed UTF-8 string, treating null as empty.
+     *
+     * @param out The stream to write to.
+     * @param s   The string.
+     * @throws IOException if the string cannot be written.
+     */
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] b = s == null ? new byte[0] : s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(b.length);
+        out.write(b);
+    }
+
+    /**
+     * Loads the newest valid checkpoint in a directory. A checkpoint that fails its
+     * checksum is skipped in favour of the next newest.
+     *
+     * @param dir    The directory to load from.
+     * @param loader Receives the checkpoint's contents.
+     * @return The journal LSN of the loaded checkpoint, or 0 if there is none.
+     * @throws IOException if the directory cannot be read.
+     */
+    public static long loadLatest(Path dir, Loader loader) throws IOException {
+        for (Map.Entry<Long, Path> entry : list(dir).descendingMap().entrySet()) {
+            try (FileChannel channel = FileChannel.open(entry.getValue(), StandardOpenOption.READ)) {
+                MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                if (isValid(in)) {
+                    load(in, loader);
+                    return entry.getKey();
+                }
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Deletes every checkpoint older than the given LSN, and any temporary files left by a crash.
+     *
+     * @param dir The checkpoint directory.
+     * @param lsn The LSN of the checkpoint to keep.
+     * @return The number of files deleted.
+     * @throws IOException if a file cannot be deleted.
+     */
+    public static int deleteOlderThan(Path dir, long lsn) throws IOException {
+        int deleted = 0;
+        for (Map.Entry<Long, Path> entry : list(dir).headMap(lsn).entrySet()) {
+            Files.deleteIfExists(entry.getValue());
+            deleted++;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, PREFIX + "*" + SUFFIX + ".tmp")) {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+                deleted++;
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * Lists the checkpoints in a directory by LSN.
+     *
+     * @param dir The directory.
+     * @return The checkpoint files, keyed by LSN.
+     * @throws IOException if the directory cannot be read.
+     */
+    private static TreeMap<Long, Path> list(Path dir) throws IOException {
+        TreeMap<Long, Path> found = new TreeMap<>();
+        if (!Files.isDirectory(dir))
+            return found;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, PREFIX + "*" + SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    found.put(Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length())), file);
+                } catch (NumberFormatException e) {
+                    // Not a checkpoint.
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Checks the header and checksum of a mapped checkpoint.
+     *
+     * @param in The mapped file.
+     * @return True if the checkpoint is complete and undamaged.
+     */
+    private static boolean isValid(ByteBuffer in) {
+        int size = in.limit();
+        if (size < 32 || in.getInt(0) != MAGIC || in.getInt(4) != FORMAT)
+            return false;
+        CRC32C crc = new CRC32C();
+        crc.update(in.slice(0, size - Integer.BYTES));
+        return in.getInt(size - Integer.BYTES) == (int) crc.getValue();
+    }
+
+    /**
+     * Decodes a validated checkpoint and passes its contents to the loader.
+     *
+     * @param in     The mapped file.
+     * @param loader Receives the contents.
+     */
+    private static void load(ByteBuffer in, Loader loader) {
+        in.position(8 + Long.BYTES);
+        int vehicles = in.getInt();
+        int customers = in.getInt();
+        int hires = in.getInt();
+        for (int i = 0; i < vehicles; i++) {
+            VehicleID id = VehicleID.fromPacked(in.getInt());
+            loader.vehicle(id, in.getLong());
+        }
+        for (int i = 0; i < customers; i++) {
+            int customerNum = in.getInt();
+            long birth = in.getLong();
+            byte flags = in.get();
+            String firstName = readString(in);
+            String lastName = readString(in);
+            loader.customer(customerNum, firstName, lastName, birth, (flags & 1) != 0, (flags & 2) != 0);
+        }
+        for (int i = 0; i < hires; i++) {
+            int customerNum = in.getInt();
+            VehicleID id = VehicleID.fromPacked(in.getInt());
+            loader.hire(customerNum, id, in.getLong(), in.getLong());
+        }
+    }
+
+    /**
+     * Reads a length-prefixed UTF-8 string.
+     *
+     * @param in The buffer to read from.
+     * @return The string.
+     */
+    private static String readString(ByteBuffer in) {
+        byte[] b = new byte[in.getInt()];
+        in.get(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,51 @@
+import java.util.function.Consumer;
+
+/**
+ * ConsoleEventSink - Prints fleet events to standard output as readable messages.
+ * Register it with EventLog.addConsumer to get console output; it runs on the
+ * event writer thread, so printing never holds up a hire or return.
+ *
+ * @author Ziyue Ren
+ * @see EventLog
+ */
+public final class ConsoleEventSink implements Consumer<FleetEvent> {
+
+    /**
+     * Prints one event.
+     *
+     * @param event The event to print.
+     */
+    @Override
+    public void accept(FleetEvent event) {
+        System.out.println(format(event));
+    }
+
+    /**
+     * Formats an event as a one-line message.
+     *
+     * @param event The event to format.
+     * @return The message.
+     */
+    public static String format(FleetEvent event) {
+        String type = event.type() == null ? "vehicle" : event.type().getName();
+        return switch (event.kind()) {
+            case HIRE -> switch (event.hireStatus()) {
+                case SUCCESS -> "Hire successful: Vehicle " + event.vehicleID()
+                        + " rented to customer " + event.customerNum();
+                case RENTAL_LIMIT -> "Hire failed: Customer " + event.customerNum()
+                        + " has reached the rental limit.";
+                case UNDERAGE -> "Hire failed: Customer " + event.customerNum()
+                        + " is too young to hire a " + type.toLowerCase() + ".";
+                case NO_LICENCE -> "Hire failed: Customer " + event.customerNum()
+                        + " needs a commercial license to hire a " + type.toLowerCase() + ".";
+                case NONE_AVAILABLE -> "Hire failed: No available " + type + " found at the moment.";
+            };
+            case RETURN -> "Vehicle " + event.vehicleID() + " returned by customer "
+                    + event.customerNum() + " after " + event.value() + " miles.";
+            case SERVICE -> "The vehicle " + event.vehicleID() + " has been serviced.";
+            case VAN_CHECK -> "The van " + event.vehicleID() + " has been checked.";
+            case OVERDUE -> "Vehicle " + event.vehicleID() + " hired by customer "
+                    + event.customerNum() + " is overdue.";
+        };
+    }
+}
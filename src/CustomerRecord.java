@@ -1,7 +1,12 @@
+import java.time.LocalDate;
+import java.time.Period;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.Objects;
-import java.util.Calendar;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * CustomerRecord - Represents a customer in the vehicle rental system.
@@ -14,49 +19,148 @@ import java.util.Calendar;
 public final class CustomerRecord {
     private final Name name;
     private final Date dateOfBirth;
+    private final LocalDate birthDate; // Date of birth in the system time zone, used for age checks.
+    // Age cached for one day: the epoch day it was computed on in the high bits, the age in the low 16 bits.
+    private volatile long ageCache = -1;
+    private static volatile Today today; // The current day, shared by all customers.
     private final boolean hasCommercialLicense;
     private final int customerNum;
-    private static int counter = 1;//A counter to generate unique customer numbers.
+    private final int hash; // Fields are immutable, so the hash code is computed once.
+    private static final AtomicInteger counter = new AtomicInteger(1);//A counter to generate unique customer numbers.
     //A map to store unique customer records based on their name and date of birth.
-    private final static HashMap<String, CustomerRecord> records = new HashMap<>();
+    private static final ConcurrentMap<Key, CustomerRecord> records = new ConcurrentHashMap<>();
+    // Each thread's key for looking up existing customers, refilled on every lookup.
+    private static final ThreadLocal<Key> probe = ThreadLocal.withInitial(Key::new);
 
     /**
-     * Private constructor to create a new CustomerRecord.
-     * This ensures that CustomerRecord objects can only be created through the static factory method.
+     * Key - Identifies a customer by trimmed first name, trimmed last name and birth time.
+     * Names are trimmed the same way as in Name, so the key matches CustomerRecord.equals.
+     * Unlike a concatenated string, distinct names can never produce the same key.
+     * Keys stored in the map are never changed; only a thread's probe key is refilled,
+     * so looking up an existing customer allocates nothing.
+     */
+    private static final class Key {
+        private String firstName;
+        private String lastName;
+        private long birth;
+        private int hash;
+
+        /**
+         * Fills the key. Names that need no trimming are used as they are.
+         *
+         * @param firstName The first name, or null.
+         * @param lastName  The last name, or null.
+         * @param birth     The birth time in milliseconds.
+         * @return This key.
+         */
+        Key set(String firstName, String lastName, long birth) {
+            this.firstName = firstName == null ? null : firstName.trim();
+            this.lastName = lastName == null ? null : lastName.trim();
+            this.birth = birth;
+            hash = (31 * Objects.hashCode(this.firstName) + Objects.hashCode(this.lastName)) * 31 + Long.hashCode(birth);
+            return this;
+        }
+
+        /**
+         * Checks whether another key holds the same names and birth time.
+         *
+         * @param o The object to compare with.
+         * @return True if the keys identify the same customer, false otherwise.
+         */
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key key && birth == key.birth
+                    && Objects.equals(firstName, key.firstName) && Objects.equals(lastName, key.lastName);
+        }
+
+        /**
+         * Returns the hash code worked out when the key was filled.
+         *
+         * @return The hash code of this key.
+         */
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * Today - The current date and the instant at which it stops being current.
+     */
+    private record Today(LocalDate date, long epochDay, long endMillis) { }
+
+    /**
+     * Private constructor to create a CustomerRecord from validated details.
+     * This ensures that CustomerRecord objects can only be created through the static factory methods.
      *
-     * @param firstName            The first name of the customer.
-     * @param lastName             The last name of the customer.
+     * @param name                 The name of the customer.
      * @param birth                The date of birth of the customer.
      * @param hasCommercialLicense Whether the customer has a commercial driving license.
+     * @param customerNum          The customer number.
      */
-    private CustomerRecord(String firstName, String lastName, Date birth, boolean hasCommercialLicense) {
-        if (birth == null)
-            throw new IllegalArgumentException("Date of birth cannot be null!");
-        this.name = new Name(firstName, lastName);
+    private CustomerRecord(Name name, Date birth, boolean hasCommercialLicense, int customerNum) {
+        this.name = name;
         this.dateOfBirth = new Date(birth.getTime()); // Defensive copy to ensure immutability.
+        this.birthDate = birth.toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
         this.hasCommercialLicense = hasCommercialLicense;
-        this.customerNum = counter++;
+        this.customerNum = customerNum;
+        this.hash = Objects.hash(name, dateOfBirth);
     }
 
     /**
      * Static factory method to create or retrieve a CustomerRecord.
      * Ensures uniqueness based on name and date of birth.
+     * Safe to call from many threads: a record is created at most once per key,
+     * and a customer number is only taken once the details are known to be valid,
+     * so each new customer takes exactly one number and rejected details take none.
+     * Finding an existing customer allocates nothing; the Name is only built for a
+     * new record.
      *
      * @param firstName            The first name of the customer.
      * @param lastName             The last name of the customer.
      * @param birth                The date of birth of the customer.
      * @param hasCommercialLicense Whether the customer has a commercial driving license.
      * @return A unique CustomerRecord instance.
+     * @throws IllegalArgumentException if a name is null or blank, or the date of birth is null.
      */
     public static CustomerRecord getInstance(String firstName, String lastName, Date birth, boolean hasCommercialLicense) {
         if (birth == null)
             throw new IllegalArgumentException("Date of birth cannot be null!");
-        String key = firstName + lastName + birth.getTime();
-        if (!records.containsKey(key)) {
-            CustomerRecord cr = new CustomerRecord(firstName, lastName, birth, hasCommercialLicense);
-            records.put(key, cr);
-        }
-        return records.get(key);
+        Key p = probe.get().set(firstName, lastName, birth.getTime());
+        CustomerRecord cr = records.get(p); // Existing customers take a single lookup.
+        p.set(null, null, 0); // Do not keep the caller's strings.
+        if (cr != null)
+            return cr;
+        // Name rejects null or blank names, and a rejected record is not added.
+        return records.computeIfAbsent(new Key().set(firstName, lastName, birth.getTime()),
+                k -> new CustomerRecord(new Name(firstName, lastName), birth, hasCommercialLicense,
+                        counter.getAndIncrement()));
+    }
+
+    /**
+     * Restores a CustomerRecord with the customer number it had before, for example
+     * when replaying the journal. Later customers are numbered after it.
+     *
+     * @param firstName            The first name of the customer.
+     * @param lastName             The last name of the customer.
+     * @param birth                The date of birth of the customer.
+     * @param hasCommercialLicense Whether the customer has a commercial driving license.
+     * @param customerNum          The customer number to restore.
+     * @return The restored CustomerRecord, or the existing one if it already has that number.
+     * @throws IllegalStateException if the customer already exists with a different number.
+     */
+    public static CustomerRecord restore(String firstName, String lastName, Date birth,
+                                         boolean hasCommercialLicense, int customerNum) {
+        if (birth == null)
+            throw new IllegalArgumentException("Date of birth cannot be null!");
+        if (customerNum <= 0)
+            throw new IllegalArgumentException("Invalid customer number: " + customerNum);
+        CustomerRecord cr = records.computeIfAbsent(new Key().set(firstName, lastName, birth.getTime()),
+                k -> new CustomerRecord(new Name(firstName, lastName), birth, hasCommercialLicense, customerNum));
+        if (cr.customerNum != customerNum)
+            throw new IllegalStateException(cr + " already exists with a different customer number.");
+        counter.accumulateAndGet(customerNum + 1, Math::max);
+        return cr;
     }
 
     /**
@@ -98,21 +202,41 @@ public final class CustomerRecord {
 
     /**
      * Calculates and returns the age of the customer based on their date of birth.
+     * The age is worked out at most once per customer per day; later calls on the
+     * same day are a clock read and a comparison, with no allocation.
      *
      * @return The age of the customer.
      */
     public int getAge() {
-        Calendar today = Calendar.getInstance();
-        Calendar birth = Calendar.getInstance();
-        birth.setTime(dateOfBirth);
-        int age = today.get(Calendar.YEAR) - birth.get(Calendar.YEAR);
-        if (today.get(Calendar.MONTH) < birth.get(Calendar.MONTH) ||
-                (today.get(Calendar.MONTH) == birth.get(Calendar.MONTH) && today.get(Calendar.DATE) < birth.get(Calendar.DATE))) {
-            age--;
-        }
+        Today t = currentDay();
+        long cached = ageCache;
+        if (cached >= 0 && (cached >>> 16) == t.epochDay())
+            return (int) (cached & 0xFFFF);
+        int age = Period.between(birthDate, t.date()).getYears();
+        if (age >= 0) // A date of birth in the future is not cached.
+            ageCache = (t.epochDay() << 16) | age;
         return age;
     }
 
+    /**
+     * Returns the current day in the system time zone.
+     * The value is shared and only rebuilt when midnight has passed.
+     *
+     * @return The current day.
+     */
+    private static Today currentDay() {
+        Today t = today;
+        long now = System.currentTimeMillis();
+        if (t == null || now >= t.endMillis()) {
+            ZoneId zone = ZoneId.systemDefault();
+            LocalDate date = LocalDate.now(zone);
+            ZonedDateTime midnight = date.plusDays(1).atStartOfDay(zone);
+            t = new Today(date, date.toEpochDay(), midnight.toInstant().toEpochMilli());
+            today = t;
+        }
+        return t;
+    }
+
     /**
      * Checks if this CustomerRecord is equal to another object.
      * Two CustomerRecords are considered equal if their name and date of birth are the same.
@@ -138,7 +262,7 @@ public final class CustomerRecord {
      */
     @Override
     public int hashCode() {
-        return Objects.hash(name, dateOfBirth);
+        return hash;
     }
 
     /**
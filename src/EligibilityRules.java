@@ -0,0 +1,192 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Properties;
+
+/**
+ * EligibilityRules - The rental rules a customer must meet to hire a vehicle.
+ * Rules are loaded from a small properties config and compiled once into
+ * lookup tables indexed by VehicleType ordinal, so checking a hire is a few
+ * array reads and integer comparisons.
+ * <p>
+ * Recognised keys, with their defaults:
+ * <pre>
+ * maxRentals=3
+ * car.minAge=18
+ * car.commercialLicence=false
+ * van.minAge=23
+ * van.commercialLicence=true
+ * van.checkAfterDays=10
+ * </pre>
+ * Keys that are left out keep their default value. Type keys use the
+ * lower-case type name; only vans can be flagged for an inspection.
+ *
+ * @author Ziyue Ren
+ * @see VehicleManager
+ * @see HireStatus
+ */
+public final class EligibilityRules {
+    private static final EligibilityRules DEFAULTS = new EligibilityRules(new Properties());
+
+    private final int maxRentals;
+    private final int[] minAge;
+    private final boolean[] needsCommercialLicence;
+    private final int[] checkAfterDays; // Integer.MAX_VALUE when hires never trigger a check.
+
+    /**
+     * Private constructor; rules are created through defaults, parse or load.
+     *
+     * @param config The rule settings; missing keys take their default value.
+     * @throws IllegalArgumentException if a key is unknown or a value is invalid.
+     */
+    private EligibilityRules(Properties config) {
+        Properties unread = new Properties();
+        unread.putAll(config);
+        maxRentals = intValue(config, unread, "maxRentals", 3);
+        VehicleType[] types = VehicleType.values();
+        minAge = new int[types.length];
+        needsCommercialLicence = new boolean[types.length];
+        checkAfterDays = new int[types.length];
+        for (VehicleType type : types) {
+            String prefix = type.getName().toLowerCase() + ".";
+            boolean van = type == VehicleType.VAN;
+            int i = type.ordinal();
+            minAge[i] = intValue(config, unread, prefix + "minAge", van ? 23 : 18);
+            needsCommercialLicence[i] = booleanValue(config, unread, prefix + "commercialLicence", van);
+            checkAfterDays[i] = van ? intValue(config, unread, prefix + "checkAfterDays", 10) : Integer.MAX_VALUE;
+        }
+        if (!unread.isEmpty())
+            throw new IllegalArgumentException("Unknown rule: " + unread.keySet().iterator().next());
+    }
+
+    /**
+     * Returns the default rule set, matching the standard rental rules.
+     *
+     * @return The default rules.
+     */
+    public static EligibilityRules defaults() {
+        return DEFAULTS;
+    }
+
+    /**
+     * Compiles rules from config text in properties format.
+     *
+     * @param config The config text.
+     * @return The compiled rules.
+     * @throws IllegalArgumentException if a key is unknown or a value is invalid.
+     */
+    public static EligibilityRules parse(String config) {
+        try {
+            return load(new StringReader(config));
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Cannot read rules.", e); // Not thrown by StringReader.
+        }
+    }
+
+    /**
+     * Compiles rules from a reader in properties format.
+     *
+     * @param reader The source of the config.
+     * @return The compiled rules.
+     * @throws IOException              if the config cannot be read.
+     * @throws IllegalArgumentException if a key is unknown or a value is invalid.
+     */
+    public static EligibilityRules load(Reader reader) throws IOException {
+        Properties config = new Properties();
+        config.load(reader);
+        return new EligibilityRules(config);
+    }
+
+    /**
+     * Checks the age and licence rules for a customer and vehicle type.
+     *
+     * @param customer The customer requesting the hire.
+     * @param type     The vehicle type.
+     * @return SUCCESS, UNDERAGE or NO_LICENCE.
+     */
+    public HireStatus checkCustomer(CustomerRecord customer, VehicleType type) {
+        if (customer.getAge() < minAge[type.ordinal()])
+            return HireStatus.UNDERAGE;
+        if (needsCommercialLicence[type.ordinal()] && !customer.hasCommercialLicense())
+            return HireStatus.NO_LICENCE;
+        return HireStatus.SUCCESS;
+    }
+
+    /**
+     * Returns the maximum number of vehicles a customer may hire at once.
+     *
+     * @return The rental limit.
+     */
+    public int getMaxRentals() {
+        return maxRentals;
+    }
+
+    /**
+     * Returns the minimum age to hire a vehicle type.
+     *
+     * @param type The vehicle type.
+     * @return The minimum age.
+     */
+    public int getMinAge(VehicleType type) {
+        return minAge[type.ordinal()];
+    }
+
+    /**
+     * Checks whether a hire of the given length flags the vehicle for an inspection.
+     *
+     * @param type     The vehicle type.
+     * @param duration The duration of the hire in days.
+     * @return True if the vehicle must be checked after the hire, false otherwise.
+     */
+    public boolean requiresCheck(VehicleType type, int duration) {
+        return duration >= checkAfterDays[type.ordinal()];
+    }
+
+    /**
+     * Reads a non-negative integer setting.
+     *
+     * @param config       The config.
+     * @param unread       The keys not yet read; the key is removed from it.
+     * @param key          The key to read.
+     * @param defaultValue The value used when the key is absent.
+     * @return The setting.
+     * @throws IllegalArgumentException if the value is not a non-negative integer.
+     */
+    private static int intValue(Properties config, Properties unread, String key, int defaultValue) {
+        unread.remove(key);
+        String value = config.getProperty(key);
+        if (value == null)
+            return defaultValue;
+        try {
+            int n = Integer.parseInt(value.trim());
+            if (n < 0)
+                throw new IllegalArgumentException("Rule " + key + " cannot be negative.");
+            return n;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Rule " + key + " must be a number: " + value, e);
+        }
+    }
+
+    /**
+     * Reads a boolean setting.
+     *
+     * @param config       The config.
+     * @param unread       The keys not yet read; the key is removed from it.
+     * @param key          The key to read.
+     * @param defaultValue The value used when the key is absent.
+     * @return The setting.
+     * @throws IllegalArgumentException if the value is not "true" or "false".
+     */
+    private static boolean booleanValue(Properties config, Properties unread, String key, boolean defaultValue) {
+        unread.remove(key);
+        String value = config.getProperty(key);
+        if (value == null)
+            return defaultValue;
+        value = value.trim();
+        if (value.equalsIgnoreCase("true"))
+            return true;
+        if (value.equalsIgnoreCase("false"))
+            return false;
+        throw new IllegalArgumentException("Rule " + key + " must be true or false: " + value);
+    }
+}
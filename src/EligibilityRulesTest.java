@@ -0,0 +1,124 @@
+import java.util.Calendar;
+
+/**
+ * EligibilityRulesTest – Verifies loading and evaluation of rental rules.
+ *
+ * @author Ziyue Ren
+ * @see EligibilityRules
+ * @see Assertions
+ */
+public class EligibilityRulesTest {
+    static String line = "____________________________";
+
+    /**
+     * Main method to execute all EligibilityRules test cases.
+     * Catches and reports any assertion errors during testing.
+     *
+     */
+    public static void main(String[] args) {
+        EligibilityRulesTest test = new EligibilityRulesTest();
+        try {
+            test.testDefaults();
+            test.testParse();
+            test.testInvalidConfig();
+            test.testBranchRules();
+
+            System.out.println("\nAll EligibilityRules test cases passed successfully.");
+        } catch (AssertionError e) {
+            System.err.println("\nTest failed: " + e.getMessage());
+            if (e.getCause() != null) {
+                System.err.println("Caused by: " + e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Checks that the default rules match the standard rental rules.
+     */
+    private void testDefaults() {
+        System.out.println("Test default rules.");
+        EligibilityRules rules = EligibilityRules.defaults();
+        Assertions.assertEquals(3, rules.getMaxRentals());
+        Assertions.assertEquals(18, rules.getMinAge(VehicleType.CAR));
+        Assertions.assertEquals(23, rules.getMinAge(VehicleType.VAN));
+        Assertions.assertFalse(rules.requiresCheck(VehicleType.VAN, 9));
+        Assertions.assertTrue(rules.requiresCheck(VehicleType.VAN, 10));
+        Assertions.assertFalse(rules.requiresCheck(VehicleType.CAR, 100));
+
+        CustomerRecord young = customer("Rules", "Young", 20, true);
+        CustomerRecord adult = customer("Rules", "Adult", 30, false);
+        Assertions.assertEquals(HireStatus.SUCCESS, rules.checkCustomer(young, VehicleType.CAR));
+        Assertions.assertEquals(HireStatus.UNDERAGE, rules.checkCustomer(young, VehicleType.VAN));
+        Assertions.assertEquals(HireStatus.NO_LICENCE, rules.checkCustomer(adult, VehicleType.VAN));
+        System.out.println("Default rules test passed.\n" + line);
+    }
+
+    /**
+     * Checks that config values override the defaults and missing keys keep them.
+     */
+    private void testParse() {
+        System.out.println("Test parse rules.");
+        EligibilityRules rules = EligibilityRules.parse("""
+                # Airport branch
+                maxRentals=1
+                car.minAge=21
+                van.commercialLicence=false
+                van.checkAfterDays=5
+                """);
+        Assertions.assertEquals(1, rules.getMaxRentals());
+        Assertions.assertEquals(21, rules.getMinAge(VehicleType.CAR));
+        Assertions.assertEquals(23, rules.getMinAge(VehicleType.VAN));
+        Assertions.assertTrue(rules.requiresCheck(VehicleType.VAN, 5));
+
+        CustomerRecord adult = customer("Rules", "Adult", 30, false);
+        Assertions.assertEquals(HireStatus.SUCCESS, rules.checkCustomer(adult, VehicleType.VAN));
+        System.out.println("Parse rules test passed.\n" + line);
+    }
+
+    /**
+     * Checks that unknown keys and bad values are rejected.
+     */
+    private void testInvalidConfig() {
+        System.out.println("Test invalid rules.");
+        String[] invalid = {"truck.minAge=18", "car.minAge=-1", "car.minAge=old",
+                "van.commercialLicence=maybe", "car.checkAfterDays=3"};
+        for (String config : invalid) {
+            try {
+                EligibilityRules.parse(config);
+                Assertions.assertNotReached();
+            } catch (Throwable t) {
+                Assertions.assertExpectedThrowable(IllegalArgumentException.class, t);
+            }
+        }
+        System.out.println("Invalid rules test passed.\n" + line);
+    }
+
+    /**
+     * Checks that VehicleManager applies rules passed for one hire.
+     */
+    private void testBranchRules() {
+        System.out.println("Test branch rules.");
+        VehicleManager manager = VehicleManager.getInstance();
+        EligibilityRules strict = EligibilityRules.parse("car.minAge=25\nmaxRentals=1");
+        manager.addVehicle("Car");
+        manager.addVehicle("Car");
+
+        CustomerRecord young = customer("Branch", "Young", 20, false);
+        CustomerRecord adult = customer("Branch", "Adult", 40, false);
+        Assertions.assertFalse(manager.hireVehicle(young, "Car", 1, strict));
+        Assertions.assertTrue(manager.hireVehicle(adult, "Car", 1, strict));
+        Assertions.assertFalse(manager.hireVehicle(adult, "Car", 1, strict));
+        Assertions.assertTrue(manager.hireVehicle(young, "Car", 1));
+        System.out.println("Branch rules test passed.\n" + line);
+    }
+
+    /**
+     * Creates a customer of the given age.
+     */
+    private static CustomerRecord customer(String firstName, String lastName, int age, boolean licence) {
+        Calendar cal = Calendar.getInstance();
+        cal.add(Calendar.YEAR, -age);
+        cal.add(Calendar.DATE, -1);
+        return CustomerRecord.getInstance(firstName, lastName, cal.getTime(), licence);
+    }
+}
@@ -0,0 +1,208 @@
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * EventLog - A bounded, asynchronous sink for fleet events.
+ * Publishers claim a slot in a fixed-size ring buffer with a single atomic
+ * increment and never block; a background writer thread drains the ring and
+ * hands each event to the registered consumers. If the ring is full the event
+ * is dropped and counted rather than holding up the publisher.
+ *
+ * @author Ziyue Ren
+ * @see FleetEvent
+ * @see ConsoleEventSink
+ */
+public final class EventLog {
+    private static final int DEFAULT_CAPACITY = 1 << 14;
+
+    private final AtomicReferenceArray<FleetEvent> ring;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong(); // Next sequence number to claim.
+    private volatile long head; // Next sequence number to drain; written only by the writer thread.
+    private volatile boolean writerWaiting;
+    private volatile boolean closed;
+    private final LongAdder dropped = new LongAdder();
+    private final List<Consumer<FleetEvent>> consumers = new CopyOnWriteArrayList<>();
+    private final Thread writer;
+
+    /**
+     * Creates an event log with the default capacity.
+     */
+    public EventLog() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates an event log and starts its writer thread.
+     *
+     * @param capacity The number of events the ring can hold; rounded up to a power of two.
+     * @throws IllegalArgumentException if capacity is not positive.
+     */
+    public EventLog(int capacity) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Capacity must be positive.");
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity)
+            size <<= 1;
+        ring = new AtomicReferenceArray<>(size);
+        mask = size - 1;
+        writer = new Thread(this::drainLoop, "fleet-event-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Registers a consumer to receive every drained event.
+     * Consumers run on the writer thread, in the order events were published.
+     *
+     * @param consumer The consumer to add.
+     */
+    public void addConsumer(Consumer<FleetEvent> consumer) {
+        if (consumer == null)
+            throw new IllegalArgumentException("Consumer cannot be null!");
+        consumers.add(consumer);
+    }
+
+    /**
+     * Unregisters a consumer.
+     *
+     * @param consumer The consumer to remove.
+     * @return True if the consumer was registered, false otherwise.
+     */
+    public boolean removeConsumer(Consumer<FleetEvent> consumer) {
+        return consumers.remove(consumer);
+    }
+
+    /**
+     * Returns whether any consumer is registered. Publishers may skip building
+     * events while there is none, since nothing would receive them.
+     *
+     * @return True if at least one consumer is registered, false otherwise.
+     */
+    public boolean hasConsumers() {
+        return !consumers.isEmpty();
+    }
+
+    /**
+     * Publishes an event without blocking.
+     *
+     * @param event The event to publish.
+     * @return True if the event was queued, false if the ring was full or the log closed.
+     */
+    public boolean publish(FleetEvent event) {
+        if (closed) {
+            dropped.increment();
+            return false;
+        }
+        long seq;
+        do {
+            seq = tail.get();
+            if (seq - head >= ring.length()) {
+                dropped.increment();
+                return false;
+            }
+        } while (!tail.compareAndSet(seq, seq + 1));
+        ring.set((int) seq & mask, event);
+        if (writerWaiting)
+            LockSupport.unpark(writer);
+        return true;
+    }
+
+    /**
+     * Returns the number of events dropped because the ring was full or the log closed.
+     *
+     * @return The dropped event count.
+     */
+    public long droppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * Returns the number of events queued but not yet delivered.
+     *
+     * @return The backlog size.
+     */
+    public int backlog() {
+        return (int) (tail.get() - head);
+    }
+
+    /**
+     * Waits until every event published before the call has been delivered.
+     *
+     * @param timeout The longest time to wait.
+     * @param unit    The unit of the timeout.
+     * @return True if the log was drained, false if the timeout expired first.
+     */
+    public boolean flush(long timeout, TimeUnit unit) {
+        long target = tail.get();
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (head < target) {
+            if (System.nanoTime() >= deadline)
+                return false;
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+        }
+        return true;
+    }
+
+    /**
+     * Stops accepting events, delivers those already queued and stops the writer thread.
+     */
+    public void close() {
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Body of the writer thread: delivers events in sequence order and parks when idle.
+     */
+    private void drainLoop() {
+        long next = head;
+        while (true) {
+            int index = (int) next & mask;
+            FleetEvent event = ring.get(index);
+            if (event != null) {
+                ring.set(index, null);
+                head = ++next; // Frees the slot for publishers.
+                deliver(event);
+                continue;
+            }
+            if (next == tail.get()) { // Nothing claimed beyond what has been drained.
+                if (closed)
+                    return;
+                writerWaiting = true;
+                if (next == tail.get() && !closed)
+                    LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(10));
+                writerWaiting = false;
+            } else {
+                Thread.onSpinWait(); // A publisher has claimed the slot but not yet filled it.
+            }
+        }
+    }
+
+    /**
+     * Hands an event to every consumer. A failing consumer does not stop the others.
+     *
+     * @param event The event to deliver.
+     */
+    private void deliver(FleetEvent event) {
+        for (Consumer<FleetEvent> consumer : consumers) {
+            try {
+                consumer.accept(event);
+            } catch (RuntimeException e) {
+                System.err.println("Event consumer failed: " + e);
+            }
+        }
+    }
+}
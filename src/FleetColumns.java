@@ -0,0 +1,101 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+
+/**
+ * FleetColumns - The manager's vehicles held on the heap as columns of primitive values.
+ * Record r holds the packed ID, service distance and state word of the r-th vehicle
+ * added, each in its own int or long array. The arrays are cut into fixed-size pages
+ * that never move once created, so vehicle views can update their state words with
+ * compare-and-set while new vehicles are appended. Aggregate queries read the
+ * columns without touching Vehicle objects.
+ *
+ * @author Ziyue Ren
+ * @see VehicleRecords
+ * @see VehicleManager#fleetTable()
+ */
+final class FleetColumns extends VehicleRecords {
+    private static final int PAGE_BITS = 12; // 4096 records per page.
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+    private static final VarHandle STATES = MethodHandles.arrayElementVarHandle(long[].class);
+
+    /**
+     * Page - One page of each column.
+     */
+    private static final class Page {
+        private final int[] ids = new int[PAGE_SIZE];
+        private final int[] distances = new int[PAGE_SIZE];
+        private final long[] states = new long[PAGE_SIZE];
+    }
+
+    private volatile Page[] pages = new Page[0]; // Replaced with a longer copy when a page is added.
+    private volatile int count; // Written under this.
+
+    /**
+     * Appends a record for a new vehicle. The record is written before the count is
+     * raised, so a reader of the count never sees a partial record.
+     *
+     * @param id                  The issued ID of the vehicle.
+     * @param distanceRequirement The service distance of the vehicle.
+     * @return The record number.
+     */
+    @Override
+    synchronized int allocate(VehicleID id, int distanceRequirement) {
+        int record = count;
+        Page[] current = pages;
+        int p = record >>> PAGE_BITS;
+        if (p == current.length) {
+            current = Arrays.copyOf(current, p + 1);
+            current[p] = new Page();
+            pages = current;
+        }
+        Page page = current[p];
+        int i = record & PAGE_MASK;
+        page.ids[i] = id.packed();
+        page.distances[i] = distanceRequirement;
+        STATES.setVolatile(page.states, i, VehicleState.pack(0, false, false));
+        count = record + 1;
+        return record;
+    }
+
+    @Override
+    int size() {
+        return count;
+    }
+
+    @Override
+    int packedIdAt(int record) {
+        return page(record).ids[record & PAGE_MASK];
+    }
+
+    @Override
+    int distanceAt(int record) {
+        return page(record).distances[record & PAGE_MASK];
+    }
+
+    @Override
+    long state(int record) {
+        return (long) STATES.getVolatile(page(record).states, record & PAGE_MASK);
+    }
+
+    @Override
+    boolean compareAndSetState(int record, long expected, long update) {
+        return STATES.compareAndSet(page(record).states, record & PAGE_MASK, expected, update);
+    }
+
+    @Override
+    void setState(int record, long state) {
+        STATES.setVolatile(page(record).states, record & PAGE_MASK, state);
+    }
+
+    /**
+     * Returns the page holding a record.
+     *
+     * @param record The record number.
+     * @return The page.
+     */
+    private Page page(int record) {
+        return pages[record >>> PAGE_BITS];
+    }
+}
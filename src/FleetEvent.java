@@ -0,0 +1,43 @@
+/**
+ * FleetEvent - A structured record of something that happened to the fleet.
+ * Events are published by VehicleManager to its EventLog.
+ *
+ * @param kind        What happened.
+ * @param timeMillis  When it happened, in milliseconds since the epoch.
+ * @param customerNum The customer involved, or 0 if none.
+ * @param vehicleID   The vehicle involved, or null if none was allocated.
+ * @param type        The vehicle type involved.
+ * @param hireStatus  The outcome of a hire; null for other kinds.
+ * @param value       The hire duration in days for a hire or an overdue hire, or the mileage driven for a return; 0 otherwise.
+ * @author Ziyue Ren
+ * @see EventLog
+ */
+public record FleetEvent(Kind kind, long timeMillis, int customerNum, VehicleID vehicleID,
+                         VehicleType type, HireStatus hireStatus, int value) {
+
+    /**
+     * Kind - The kinds of fleet event.
+     */
+    public enum Kind {
+        /**
+         * A hire was attempted; hireStatus gives the outcome.
+         */
+        HIRE,
+        /**
+         * A vehicle was returned.
+         */
+        RETURN,
+        /**
+         * A vehicle was serviced.
+         */
+        SERVICE,
+        /**
+         * A van was inspected.
+         */
+        VAN_CHECK,
+        /**
+         * A hired vehicle was not returned by its due time.
+         */
+        OVERDUE
+    }
+}
@@ -0,0 +1,228 @@
+import java.util.*;
+import java.util.function.BiConsumer;
+
+/**
+ * FleetSnapshot - An immutable view of the vehicles, customers and hires in the
+ * system, all taken at the same version of the fleet.
+ * Obtained from VehicleManager.snapshot(). The lists and maps cannot be modified,
+ * and later hires and returns do not change them. The Vehicle and CustomerRecord
+ * objects themselves are the live ones, so a vehicle's own mileage and state
+ * may have moved on since the snapshot was taken; the mileage and flags at the
+ * snapshot's version are kept alongside and read with getMileage. Likewise the
+ * HireRecords are the live ones, so a hire may have been flagged overdue since.
+ *
+ * @author Ziyue Ren
+ * @see VehicleManager
+ */
+public final class FleetSnapshot {
+    private final long version;
+    private final List<Vehicle> vehicles;
+    private final List<CustomerRecord> customers;
+    private final Map<VehicleID, HireRecord> hires;
+    private final Map<Integer, Set<Vehicle>> hiredVehicles;
+    private final int[] available; // Vehicles not hired, indexed by VehicleType ordinal.
+    private final long[] states; // State word of each vehicle at the version, see VehicleState.
+    private volatile Map<Vehicle, Integer> positions; // Index of each vehicle in the list, built on first use.
+    private volatile FleetTable table; // Columns of the vehicle state, built on first use.
+    private final long journalLsn;
+
+    /**
+     * Creates a snapshot from copies of the manager's state.
+     * The copies are owned by the snapshot and must not be changed afterwards.
+     *
+     * @param version    The fleet version the copies were taken at.
+     * @param vehicles   Every vehicle in the system.
+     * @param customers  Every customer in the system.
+     * @param states     The state word of each vehicle, in list order.
+     * @param hires      The hire record of every hired vehicle.
+     * @param journalLsn The LSN of the last journal record the copies include, or 0 if there is no journal.
+     */
+    FleetSnapshot(long version, List<Vehicle> vehicles, long[] states, List<CustomerRecord> customers,
+                  Map<VehicleID, HireRecord> hires, long journalLsn) {
+        this.version = version;
+        this.states = states;
+        this.journalLsn = journalLsn;
+        this.vehicles = Collections.unmodifiableList(vehicles);
+        this.customers = Collections.unmodifiableList(customers);
+        this.hires = Collections.unmodifiableMap(hires);
+
+        available = new int[VehicleType.values().length];
+        Map<Integer, Set<Vehicle>> hired = new HashMap<>();
+        for (Vehicle v : vehicles) {
+            HireRecord hire = hires.get(v.getVehicleID());
+            if (hire == null)
+                available[v.getType().ordinal()]++;
+            else
+                hired.computeIfAbsent(hire.getCustomer().getCustomerNum(), k -> new HashSet<>()).add(v);
+        }
+        hired.replaceAll((customerNum, set) -> Collections.unmodifiableSet(set));
+        hiredVehicles = Collections.unmodifiableMap(hired);
+    }
+
+    /**
+     * Returns the fleet version the snapshot was taken at.
+     * A later snapshot has a version at least as high, and an equal version
+     * means nothing changed in between.
+     *
+     * @return The fleet version.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns every vehicle in the system, in the order they were added.
+     *
+     * @return An unmodifiable list of vehicles.
+     */
+    public List<Vehicle> getAllVehicles() {
+        return vehicles;
+    }
+
+    /**
+     * Returns every customer in the system, in the order they were added.
+     *
+     * @return An unmodifiable list of customers.
+     */
+    public List<CustomerRecord> getCustomers() {
+        return customers;
+    }
+
+    /**
+     * Returns the vehicles on hire, keyed by customer number.
+     *
+     * @return An unmodifiable map of hired vehicles.
+     */
+    public Map<Integer, Set<Vehicle>> getHiredVehicles() {
+        return hiredVehicles;
+    }
+
+    /**
+     * Returns the customer who was hiring a vehicle.
+     *
+     * @param vehicleID The ID of the vehicle.
+     * @return The hiring customer, or null if the vehicle was not hired.
+     */
+    public CustomerRecord getHirer(VehicleID vehicleID) {
+        HireRecord hire = hires.get(vehicleID);
+        return hire == null ? null : hire.getCustomer();
+    }
+
+    /**
+     * Returns the hire of a vehicle.
+     *
+     * @param vehicleID The ID of the vehicle.
+     * @return The hire record, or null if the vehicle was not hired.
+     */
+    public HireRecord getHireRecord(VehicleID vehicleID) {
+        return hires.get(vehicleID);
+    }
+
+    /**
+     * Returns every hire, in no particular order.
+     *
+     * @return An unmodifiable collection of hire records.
+     */
+    public Collection<HireRecord> getHireRecords() {
+        return hires.values();
+    }
+
+    /**
+     * Returns the number of vehicles on hire.
+     *
+     * @return The number of hired vehicles.
+     */
+    public int hiredCount() {
+        return hires.size();
+    }
+
+    /**
+     * Returns the mileage a vehicle had at the snapshot's version.
+     *
+     * @param vehicle The vehicle.
+     * @return The mileage since its last service.
+     * @throws IllegalArgumentException if the vehicle is not in the snapshot.
+     */
+    public int getMileage(Vehicle vehicle) {
+        return VehicleState.mileage(states[position(vehicle)]);
+    }
+
+    /**
+     * Returns the vehicles at the snapshot's version as columns, for aggregate queries.
+     * Built on first call and then shared.
+     *
+     * @return The fleet table.
+     */
+    public FleetTable getTable() {
+        FleetTable t = table;
+        if (t == null) {
+            t = new FleetTable(vehicles, states);
+            table = t; // A racing thread may build an equal table; either is fine.
+        }
+        return t;
+    }
+
+    /**
+     * Passes each hire to an action, as the hiring customer and the hired vehicle.
+     *
+     * @param action The action to run for each hire.
+     */
+    public void forEachHire(BiConsumer<CustomerRecord, Vehicle> action) {
+        for (Vehicle v : vehicles) {
+            HireRecord hire = hires.get(v.getVehicleID());
+            if (hire != null)
+                action.accept(hire.getCustomer(), v);
+        }
+    }
+
+    /**
+     * Returns the state word a vehicle had at the snapshot's version, in the
+     * form written to checkpoints.
+     *
+     * @param index The index of the vehicle in getAllVehicles().
+     * @return The packed state, see VehicleState.
+     */
+    long stateAt(int index) {
+        return states[index];
+    }
+
+    /**
+     * Returns the LSN of the last journal record reflected in the snapshot.
+     *
+     * @return The journal LSN, or 0 if no journal was open.
+     */
+    long getJournalLsn() {
+        return journalLsn;
+    }
+
+    /**
+     * Returns the index of a vehicle in the vehicle list.
+     *
+     * @param vehicle The vehicle.
+     * @return The index.
+     * @throws IllegalArgumentException if the vehicle is not in the snapshot.
+     */
+    private int position(Vehicle vehicle) {
+        Map<Vehicle, Integer> index = positions;
+        if (index == null) {
+            index = new HashMap<>(vehicles.size() * 2);
+            for (int i = 0; i < vehicles.size(); i++)
+                index.put(vehicles.get(i), i);
+            positions = index; // A racing thread may build an equal map; either is fine.
+        }
+        Integer i = index.get(vehicle);
+        if (i == null)
+            throw new IllegalArgumentException(vehicle + " is not in the snapshot.");
+        return i;
+    }
+
+    /**
+     * Returns the number of vehicles of a type that were not hired.
+     *
+     * @param type The vehicle type.
+     * @return The number of available vehicles of the type.
+     */
+    public int noOfAvailableVehicles(VehicleType type) {
+        return available[type.ordinal()];
+    }
+}
@@ -0,0 +1,311 @@
+import java.util.BitSet;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * FleetTable - A column-per-field copy of the fleet for aggregate queries.
+ * Built from a FleetSnapshot, or by the manager from the vehicle records it keeps,
+ * so every column describes the same version of the fleet.
+ * Mileage and service distance are held in int arrays and the vehicle type in a
+ * byte array, one row per vehicle; the hired and inspection flags are bit sets.
+ * Queries are plain loops over the arrays with no branches on the data, so the
+ * JIT can unroll and vectorise them, and no Vehicle objects are touched.
+ * <p>
+ * The table returned by parallel() splits queries over large tables into chunks
+ * run on the common fork/join pool.
+ *
+ * @author Ziyue Ren
+ * @see FleetSnapshot
+ * @see VehicleManager#fleetTable()
+ */
+public final class FleetTable {
+    private static final int CHUNK = 1 << 14; // Rows per parallel task; a multiple of 64.
+    private static final int PARALLEL_THRESHOLD = 1 << 16; // Smaller tables are always scanned on one thread.
+
+    private final int size;
+    private final int[] mileage;
+    private final int[] distance;
+    private final byte[] type; // VehicleType ordinal.
+    private final long[] hired; // Words of the hired bit set.
+    private final long[] check; // Words of the inspection bit set.
+    private final boolean parallel;
+
+    /**
+     * Builds the columns from a snapshot's vehicles and their state words.
+     *
+     * @param vehicles The snapshot's vehicles.
+     * @param states   The state word of each vehicle, in list order.
+     */
+    FleetTable(List<Vehicle> vehicles, long[] states) {
+        size = vehicles.size();
+        mileage = new int[size];
+        distance = new int[size];
+        type = new byte[size];
+        BitSet hiredSet = new BitSet(size);
+        BitSet checkSet = new BitSet(size);
+        for (int i = 0; i < size; i++) {
+            Vehicle v = vehicles.get(i);
+            long state = states[i];
+            mileage[i] = VehicleState.mileage(state);
+            distance[i] = v.getDistanceRequirement();
+            type[i] = (byte) v.getType().ordinal();
+            if (VehicleState.isHired(state))
+                hiredSet.set(i);
+            if (VehicleState.needsCheck(state))
+                checkSet.set(i);
+        }
+        hired = words(hiredSet, size);
+        check = words(checkSet, size);
+        parallel = false;
+    }
+
+    /**
+     * Builds the columns from vehicle records, one row per record that is not retired,
+     * in the order given. Reads only primitive values; the caller keeps writers out while it runs.
+     *
+     * @param sets The records, such as the manager's store and fleet columns.
+     */
+    FleetTable(VehicleRecords... sets) {
+        int[] sizes = new int[sets.length];
+        int total = 0;
+        for (int s = 0; s < sets.length; s++) {
+            sizes[s] = sets[s].size();
+            for (int r = 0; r < sizes[s]; r++)
+                if (!VehicleState.isRetired(sets[s].state(r)))
+                    total++;
+        }
+        size = total;
+        mileage = new int[size];
+        distance = new int[size];
+        type = new byte[size];
+        hired = new long[(size + 63) >>> 6];
+        check = new long[hired.length];
+        int i = 0;
+        for (int s = 0; s < sets.length; s++) {
+            VehicleRecords records = sets[s];
+            for (int r = 0; r < sizes[s] && i < size; r++) {
+                long state = records.state(r);
+                if (VehicleState.isRetired(state))
+                    continue;
+                mileage[i] = VehicleState.mileage(state);
+                distance[i] = records.distanceAt(r);
+                type[i] = (byte) VehicleID.typeOf(records.packedIdAt(r)).ordinal();
+                hired[i >>> 6] |= (VehicleState.isHired(state) ? 1L : 0) << i;
+                check[i >>> 6] |= (VehicleState.needsCheck(state) ? 1L : 0) << i;
+                i++;
+            }
+        }
+        parallel = false;
+    }
+
+    /**
+     * Creates a table sharing another table's columns.
+     *
+     * @param table    The table to share.
+     * @param parallel Whether queries over large tables run in parallel.
+     */
+    private FleetTable(FleetTable table, boolean parallel) {
+        size = table.size;
+        mileage = table.mileage;
+        distance = table.distance;
+        type = table.type;
+        hired = table.hired;
+        check = table.check;
+        this.parallel = parallel;
+    }
+
+    /**
+     * Returns the words of a bit set, padded to cover every row.
+     *
+     * @param bits The bit set.
+     * @param size The number of rows.
+     * @return One long per 64 rows.
+     */
+    private static long[] words(BitSet bits, int size) {
+        long[] w = new long[(size + 63) >>> 6];
+        long[] set = bits.toLongArray();
+        System.arraycopy(set, 0, w, 0, set.length);
+        return w;
+    }
+
+    /**
+     * Returns a table with the same columns whose queries over large tables run in parallel.
+     *
+     * @return The parallel table.
+     */
+    public FleetTable parallel() {
+        return parallel ? this : new FleetTable(this, true);
+    }
+
+    /**
+     * Returns the number of vehicles in the table.
+     *
+     * @return The number of rows.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Counts the vehicles of a type.
+     *
+     * @param vehicleType The vehicle type.
+     * @return The number of vehicles of the type.
+     */
+    public int count(VehicleType vehicleType) {
+        byte t = ordinal(vehicleType);
+        return (int) run((from, to) -> {
+            long n = 0;
+            for (int i = from; i < to; i++)
+                n += type[i] == t ? 1 : 0;
+            return n;
+        });
+    }
+
+    /**
+     * Counts the hired vehicles of a type.
+     *
+     * @param vehicleType The vehicle type.
+     * @return The number of hired vehicles of the type.
+     */
+    public int countHired(VehicleType vehicleType) {
+        byte t = ordinal(vehicleType);
+        return (int) run((from, to) -> {
+            long n = 0;
+            for (int i = from; i < to; i++)
+                n += (type[i] == t ? 1 : 0) & bit(hired, i);
+            return n;
+        });
+    }
+
+    /**
+     * Counts the vans awaiting an inspection.
+     *
+     * @return The number of vehicles with the inspection flag set.
+     */
+    public int countNeedingCheck() {
+        long n = 0;
+        for (long w : check)
+            n += Long.bitCount(w);
+        return (int) n;
+    }
+
+    /**
+     * Counts the vehicles of a type whose mileage has reached at least a fraction of
+     * their service distance, e.g. 0.8 for vehicles over 80% of the way to a service.
+     *
+     * @param vehicleType The vehicle type.
+     * @param fraction    The fraction of the service distance, from 0.
+     * @return The number of vehicles of the type at or past the fraction.
+     * @throws IllegalArgumentException if fraction is negative or not a number.
+     */
+    public int countAtServiceFraction(VehicleType vehicleType, double fraction) {
+        if (!(fraction >= 0))
+            throw new IllegalArgumentException("Fraction cannot be negative.");
+        byte t = ordinal(vehicleType);
+        return (int) run((from, to) -> {
+            long n = 0;
+            for (int i = from; i < to; i++)
+                n += (type[i] == t & mileage[i] >= distance[i] * fraction) ? 1 : 0;
+            return n;
+        });
+    }
+
+    /**
+     * Sums the mileage of the vehicles of a type.
+     *
+     * @param vehicleType The vehicle type.
+     * @return The total mileage since the last service.
+     */
+    public long totalMileage(VehicleType vehicleType) {
+        byte t = ordinal(vehicleType);
+        return run((from, to) -> {
+            long sum = 0;
+            for (int i = from; i < to; i++)
+                sum += type[i] == t ? mileage[i] : 0;
+            return sum;
+        });
+    }
+
+    /**
+     * Sums the mileage of the hired vehicles of a type.
+     *
+     * @param vehicleType The vehicle type.
+     * @return The total mileage since the last service of the hired vehicles.
+     */
+    public long totalHiredMileage(VehicleType vehicleType) {
+        byte t = ordinal(vehicleType);
+        return run((from, to) -> {
+            long sum = 0;
+            for (int i = from; i < to; i++)
+                sum += (type[i] == t ? mileage[i] : 0) & -bit(hired, i); // Masked to zero when not hired.
+            return sum;
+        });
+    }
+
+    /**
+     * Returns the mean mileage of the vehicles of a type.
+     *
+     * @param vehicleType The vehicle type.
+     * @return The mean mileage, or 0 if there are no vehicles of the type.
+     */
+    public double averageMileage(VehicleType vehicleType) {
+        int n = count(vehicleType);
+        return n == 0 ? 0 : (double) totalMileage(vehicleType) / n;
+    }
+
+    /**
+     * Returns bit i of a bit set's words.
+     *
+     * @param words The words.
+     * @param i     The row.
+     * @return 1 if the bit is set, 0 otherwise.
+     */
+    private static int bit(long[] words, int i) {
+        return (int) (words[i >>> 6] >>> i) & 1;
+    }
+
+    /**
+     * Returns the ordinal of a vehicle type as stored in the type column.
+     *
+     * @param vehicleType The vehicle type.
+     * @return The ordinal.
+     * @throws IllegalArgumentException if the type is null.
+     */
+    private static byte ordinal(VehicleType vehicleType) {
+        if (vehicleType == null)
+            throw new IllegalArgumentException("Vehicle type cannot be null.");
+        return (byte) vehicleType.ordinal();
+    }
+
+    /**
+     * Runs a query over every row, in chunks on the common pool when this is a
+     * parallel table and the table is large, and adds up the chunk results.
+     *
+     * @param query The query over a range of rows.
+     * @return The sum of the query over all rows.
+     */
+    private long run(RangeQuery query) {
+        if (!parallel || size < PARALLEL_THRESHOLD)
+            return query.apply(0, size);
+        int chunks = (size + CHUNK - 1) / CHUNK;
+        return IntStream.range(0, chunks).parallel()
+                .mapToLong(c -> query.apply(c * CHUNK, Math.min(size, (c + 1) * CHUNK)))
+                .sum();
+    }
+
+    /**
+     * RangeQuery - A query over the rows from one index to another.
+     */
+    @FunctionalInterface
+    private interface RangeQuery {
+        /**
+         * Runs the query.
+         *
+         * @param from The first row, inclusive.
+         * @param to   The last row, exclusive.
+         * @return The query's result over the rows.
+         */
+        long apply(int from, int to);
+    }
+}
@@ -0,0 +1,109 @@
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HireRecord - One vehicle on hire: who hired it, when the hire started and when it is due back.
+ * Created by VehicleManager when a hire succeeds and dropped when the vehicle is returned.
+ * A hire still out after its due time is flagged as overdue by the manager's timing wheel.
+ *
+ * @author Ziyue Ren
+ * @see VehicleManager#getHireRecord(VehicleID)
+ * @see VehicleManager#checkOverdue(long)
+ */
+public final class HireRecord {
+    private final CustomerRecord customer;
+    private final Vehicle vehicle;
+    private final long startMillis;
+    private final long dueMillis;
+    private volatile boolean overdue;
+    TimingWheel.Timer<HireRecord> timer; // The due-time timer; set and cancelled by VehicleManager.
+
+    /**
+     * Creates a hire record.
+     *
+     * @param customer    The hiring customer.
+     * @param vehicle     The hired vehicle.
+     * @param startMillis When the hire started, in milliseconds since the epoch.
+     * @param dueMillis   When the vehicle is due back, in milliseconds since the epoch.
+     */
+    HireRecord(CustomerRecord customer, Vehicle vehicle, long startMillis, long dueMillis) {
+        this.customer = customer;
+        this.vehicle = vehicle;
+        this.startMillis = startMillis;
+        this.dueMillis = dueMillis;
+    }
+
+    /**
+     * Returns the due time of a hire of a number of days starting at a time.
+     *
+     * @param startMillis When the hire starts, in milliseconds since the epoch.
+     * @param duration    The duration of the hire in days.
+     * @return The due time, in milliseconds since the epoch.
+     */
+    static long dueAfter(long startMillis, int duration) {
+        return startMillis + TimeUnit.DAYS.toMillis(duration);
+    }
+
+    /**
+     * Returns the hiring customer.
+     *
+     * @return The customer.
+     */
+    public CustomerRecord getCustomer() {
+        return customer;
+    }
+
+    /**
+     * Returns the hired vehicle.
+     *
+     * @return The vehicle.
+     */
+    public Vehicle getVehicle() {
+        return vehicle;
+    }
+
+    /**
+     * Returns when the hire started.
+     *
+     * @return The start time, in milliseconds since the epoch.
+     */
+    public long getStartMillis() {
+        return startMillis;
+    }
+
+    /**
+     * Returns when the vehicle is due back.
+     *
+     * @return The due time, in milliseconds since the epoch.
+     */
+    public long getDueMillis() {
+        return dueMillis;
+    }
+
+    /**
+     * Returns whether the hire has been flagged as overdue.
+     *
+     * @return True if the vehicle was not back by its due time when the manager last checked.
+     */
+    public boolean isOverdue() {
+        return overdue;
+    }
+
+    /**
+     * Flags the hire as overdue.
+     */
+    void markOverdue() {
+        overdue = true;
+    }
+
+    /**
+     * Returns a string representation of the hire.
+     *
+     * @return A string naming the vehicle, the customer and the due time.
+     */
+    @Override
+    public String toString() {
+        return vehicle + " hired by customer " + customer.getCustomerNum() + ", due " + new Date(dueMillis)
+                + (overdue ? " (overdue)" : "");
+    }
+}
@@ -0,0 +1,36 @@
+/**
+ * HireRequest - One hire in a batch passed to VehicleManager.hireVehicles.
+ *
+ * @param customer The customer requesting the hire.
+ * @param type     The type of vehicle to hire.
+ * @param duration The duration of the hire in days.
+ * @author Ziyue Ren
+ * @see VehicleManager
+ * @see HireResult
+ */
+public record HireRequest(CustomerRecord customer, VehicleType type, int duration) {
+
+    /**
+     * Creates a hire request.
+     *
+     * @throws IllegalArgumentException if the customer or type is null.
+     */
+    public HireRequest {
+        if (customer == null)
+            throw new IllegalArgumentException("Customer cannot be null!");
+        if (type == null)
+            throw new IllegalArgumentException("Vehicle type cannot be null!");
+    }
+
+    /**
+     * Creates a hire request for a vehicle type given by name.
+     *
+     * @param customer    The customer requesting the hire.
+     * @param vehicleType The type of vehicle to hire ("Car" or "Van").
+     * @param duration    The duration of the hire in days.
+     * @throws IllegalArgumentException if the customer is null or the type is invalid.
+     */
+    public HireRequest(CustomerRecord customer, String vehicleType, int duration) {
+        this(customer, VehicleType.of(vehicleType), duration);
+    }
+}
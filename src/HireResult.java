@@ -0,0 +1,95 @@
+/**
+ * HireResult - The outcome of a hire request: the vehicle hired, or the reason the hire failed.
+ * Failed results carry no per-call data, so one shared instance is kept for each
+ * failure reason and a failed hire allocates no result. The failure is still
+ * published as an event when the event log has consumers.
+ *
+ * @author Ziyue Ren
+ * @see HireStatus
+ * @see VehicleManager
+ */
+public final class HireResult {
+    private static final HireResult[] FAILURES = new HireResult[HireStatus.values().length]; // Indexed by status ordinal.
+    private final HireStatus status;
+    private final Vehicle vehicle;
+
+    static {
+        for (HireStatus status : HireStatus.values())
+            if (status != HireStatus.SUCCESS)
+                FAILURES[status.ordinal()] = new HireResult(status, null);
+    }
+
+    /**
+     * Private constructor; results are obtained through success and failure.
+     *
+     * @param status  The outcome of the hire.
+     * @param vehicle The vehicle hired, or null if the hire failed.
+     */
+    private HireResult(HireStatus status, Vehicle vehicle) {
+        this.status = status;
+        this.vehicle = vehicle;
+    }
+
+    /**
+     * Returns a successful result for a hired vehicle.
+     *
+     * @param vehicle The vehicle hired.
+     * @return A successful result.
+     * @throws IllegalArgumentException if vehicle is null.
+     */
+    public static HireResult success(Vehicle vehicle) {
+        if (vehicle == null)
+            throw new IllegalArgumentException("Vehicle cannot be null!");
+        return new HireResult(HireStatus.SUCCESS, vehicle);
+    }
+
+    /**
+     * Returns the shared result for a failure reason.
+     *
+     * @param status The reason the hire failed.
+     * @return The failed result for the reason.
+     * @throws IllegalArgumentException if status is null or SUCCESS.
+     */
+    public static HireResult failure(HireStatus status) {
+        if (status == null || status == HireStatus.SUCCESS)
+            throw new IllegalArgumentException("Invalid failure reason: " + status);
+        return FAILURES[status.ordinal()];
+    }
+
+    /**
+     * Returns the outcome of the hire.
+     *
+     * @return SUCCESS, or the reason the hire failed.
+     */
+    public HireStatus getStatus() {
+        return status;
+    }
+
+    /**
+     * Returns the vehicle that was hired.
+     *
+     * @return The vehicle, or null if the hire failed.
+     */
+    public Vehicle getVehicle() {
+        return vehicle;
+    }
+
+    /**
+     * Checks whether the hire succeeded.
+     *
+     * @return True if a vehicle was hired, false otherwise.
+     */
+    public boolean isSuccess() {
+        return status == HireStatus.SUCCESS;
+    }
+
+    /**
+     * Returns a string representation of the result.
+     *
+     * @return The status, followed by the vehicle ID if the hire succeeded.
+     */
+    @Override
+    public String toString() {
+        return vehicle == null ? status.toString() : status + " " + vehicle.getVehicleID();
+    }
+}
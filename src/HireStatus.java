@@ -0,0 +1,29 @@
+/**
+ * HireStatus - The outcome of a hire request.
+ *
+ * @author Ziyue Ren
+ * @see VehicleManager
+ * @see EligibilityRules
+ */
+public enum HireStatus {
+    /**
+     * The hire succeeded.
+     */
+    SUCCESS,
+    /**
+     * The customer already has the maximum number of vehicles on hire.
+     */
+    RENTAL_LIMIT,
+    /**
+     * The customer is too young for the vehicle type.
+     */
+    UNDERAGE,
+    /**
+     * The vehicle type needs a commercial licence the customer does not have.
+     */
+    NO_LICENCE,
+    /**
+     * No vehicle of the type is available.
+     */
+    NONE_AVAILABLE
+}
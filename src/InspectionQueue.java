@@ -0,0 +1,178 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * InspectionQueue - A work queue of returned vans awaiting their inspection.
+ * A fixed number of worker threads take vans in the order they were returned and
+ * pass each to an Inspector; when the inspection finishes, the van is handed back
+ * so it can be cleared and made available again. An inspection that throws, or a
+ * van that cannot be handed back (for example because the journal failed), is
+ * counted and the van is queued again, so the worker keeps running and the van is
+ * not lost.
+ * <p>
+ * Workers are made by a ThreadFactory, so they can be platform threads or, on a
+ * Java release that has them, virtual threads. Queue depth, inspections in
+ * progress and the time vans spend waiting and being inspected are read with stats().
+ *
+ * @author Ziyue Ren
+ * @see VehicleManager#startInspections(int, ThreadFactory, Inspector)
+ * @see InspectionStats
+ */
+public final class InspectionQueue {
+    /**
+     * Inspector - Carries out the inspection of one van.
+     */
+    @FunctionalInterface
+    public interface Inspector {
+        /**
+         * Inspects a van. Returning normally means the van passed and can be hired again.
+         *
+         * @param van The van to inspect.
+         * @throws Exception if the inspection could not be completed; the van is queued again.
+         */
+        void inspect(Van van) throws Exception;
+    }
+
+    /**
+     * Job - A van in the queue and when it joined.
+     *
+     * @param van      The van.
+     * @param queuedAt The System.nanoTime() at which it was queued.
+     */
+    private record Job(Van van, long queuedAt) {
+    }
+
+    private final LinkedBlockingQueue<Job> queue = new LinkedBlockingQueue<>();
+    private final Inspector inspector;
+    private final Consumer<Van> onInspected; // Clears a van and makes it available again.
+    private final List<Thread> workers;
+    private volatile boolean closed; // Set under this, so no van is queued after close() drains the queue.
+    private final AtomicInteger inProgress = new AtomicInteger();
+    private final AtomicLong completed = new AtomicLong();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder totalWaitNanos = new LongAdder();
+    private final LongAdder totalInspectionNanos = new LongAdder();
+    private final LongAccumulator maxInspectionNanos = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Creates the queue and starts its workers.
+     *
+     * @param workers     The number of worker threads.
+     * @param threads     Makes the worker threads.
+     * @param inspector   Carries out each inspection.
+     * @param onInspected Called on the worker thread with each van that passed; if it
+     *                    throws, the van must still be flagged so it can be retried.
+     * @throws IllegalArgumentException if workers is not positive or an argument is null.
+     */
+    InspectionQueue(int workers, ThreadFactory threads, Inspector inspector, Consumer<Van> onInspected) {
+        if (workers <= 0)
+            throw new IllegalArgumentException("Number of inspection workers must be positive.");
+        if (threads == null || inspector == null)
+            throw new IllegalArgumentException("Thread factory and inspector cannot be null.");
+        this.inspector = inspector;
+        this.onInspected = onInspected;
+        this.workers = new ArrayList<>(workers);
+        for (int i = 0; i < workers; i++) {
+            Thread t = threads.newThread(this::work);
+            this.workers.add(t);
+            t.start();
+        }
+    }
+
+    /**
+     * Queues a van for inspection.
+     *
+     * @param van The van.
+     * @return True if the van was queued, false if the queue has been closed.
+     */
+    synchronized boolean submit(Van van) {
+        if (closed)
+            return false;
+        queue.add(new Job(van, System.nanoTime()));
+        return true;
+    }
+
+    /**
+     * Takes and inspects vans until the queue is closed.
+     */
+    private void work() {
+        while (!closed) {
+            Job job;
+            try {
+                job = queue.take();
+            } catch (InterruptedException e) {
+                return; // Closed.
+            }
+            inProgress.incrementAndGet();
+            long start = System.nanoTime();
+            try {
+                inspector.inspect(job.van());
+            } catch (Exception e) {
+                failed.increment();
+                queue.add(job); // Try again; drained by close() if the queue is closing.
+                inProgress.decrementAndGet();
+                continue;
+            }
+            long took = System.nanoTime() - start;
+            totalWaitNanos.add(start - job.queuedAt());
+            totalInspectionNanos.add(took);
+            maxInspectionNanos.accumulate(took);
+            try {
+                onInspected.accept(job.van());
+                completed.incrementAndGet();
+            } catch (RuntimeException e) { // Not handed back; inspect it again later.
+                failed.increment();
+                queue.add(new Job(job.van(), System.nanoTime()));
+            } finally {
+                inProgress.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Returns the current counters.
+     *
+     * @return The queue depth, inspections in progress and timings.
+     */
+    public InspectionStats stats() {
+        return new InspectionStats(queue.size(), inProgress.get(), completed.get(), failed.sum(),
+                totalWaitNanos.sum(), totalInspectionNanos.sum(), maxInspectionNanos.get());
+    }
+
+    /**
+     * Stops the workers, interrupting any inspection in progress, and waits for them to finish.
+     *
+     * @return The vans that were not inspected, in queue order.
+     */
+    List<Van> close() {
+        synchronized (this) {
+            closed = true;
+        }
+        for (Thread t : workers)
+            t.interrupt();
+        boolean interrupted = false;
+        for (Thread t : workers) {
+            while (t.isAlive()) {
+                try {
+                    t.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+        List<Van> pending = new ArrayList<>();
+        Job job;
+        while ((job = queue.poll()) != null)
+            pending.add(job.van());
+        return pending;
+    }
+}
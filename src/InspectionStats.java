@@ -0,0 +1,46 @@
+/**
+ * InspectionStats - Counters of an InspectionQueue at one moment, for sizing inspection staff.
+ *
+ * @param queued              The vans waiting for an inspector.
+ * @param inProgress          The vans being inspected.
+ * @param completed           The inspections finished so far.
+ * @param failed              The inspections that threw, or whose van could not be
+ *                            handed back, and were queued again.
+ * @param totalWaitNanos      The time completed vans spent waiting in the queue, in nanoseconds.
+ * @param totalInspectionNanos The time spent in completed inspections, in nanoseconds.
+ * @param maxInspectionNanos  The longest completed inspection, in nanoseconds.
+ * @author Ziyue Ren
+ * @see InspectionQueue
+ */
+public record InspectionStats(int queued, int inProgress, long completed, long failed,
+                              long totalWaitNanos, long totalInspectionNanos, long maxInspectionNanos) {
+
+    /**
+     * Returns the mean time a completed van waited for an inspector, in milliseconds.
+     *
+     * @return The mean wait, or 0 if nothing has been completed.
+     */
+    public double averageWaitMillis() {
+        return completed == 0 ? 0 : totalWaitNanos / 1e6 / completed;
+    }
+
+    /**
+     * Returns the mean time of a completed inspection, in milliseconds.
+     *
+     * @return The mean inspection time, or 0 if nothing has been completed.
+     */
+    public double averageInspectionMillis() {
+        return completed == 0 ? 0 : totalInspectionNanos / 1e6 / completed;
+    }
+
+    /**
+     * Returns a one-line summary of the counters.
+     *
+     * @return A summary of the counters.
+     */
+    @Override
+    public String toString() {
+        return String.format("%d queued, %d in progress, %d completed, %d failed, avg wait %.1f ms, avg inspection %.1f ms, max %.1f ms",
+                queued, inProgress, completed, failed, averageWaitMillis(), averageInspectionMillis(), maxInspectionNanos / 1e6);
+    }
+}
@@ -0,0 +1,792 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32C;
+
+/**
+ * Journal - A binary write-ahead log of changes to the fleet.
+ * Every record carries a log sequence number (LSN) and a checksum. Appending only
+ * encodes the record into an in-memory buffer; a background writer thread takes
+ * everything appended since its last pass and writes it with one call, so many
+ * appends share one write and one fsync (group commit). When the log is forced
+ * to disk is set by the SyncPolicy.
+ * <p>
+ * The log is a series of segment files in one directory, each named after the LSN
+ * of its first record. roll() starts a new segment, and once a checkpoint covers
+ * every record of the older segments they can be deleted, so the log does not
+ * grow without bound.
+ * <p>
+ * On open, the records after a given LSN are passed to a Replayer. A record cut
+ * short or damaged by a crash ends the log; it and anything after it in the last
+ * segment are discarded.
+ *
+ * @author Ziyue Ren
+ * @see VehicleManager
+ */
+public final class Journal implements Closeable {
+    /**
+     * SyncPolicy - When the journal is forced to disk.
+     */
+    public enum SyncPolicy {
+        /**
+         * Each group commit is forced to disk, and commit waits for it.
+         * A change is never lost once the operation making it has returned.
+         */
+        COMMIT,
+        /**
+         * Group commits are forced at most once per sync interval, and commit does not wait.
+         * A machine crash can lose the changes of the last interval.
+         */
+        INTERVAL,
+        /**
+         * The journal is never forced; the operating system writes it back.
+         * A JVM crash loses nothing that was written, a machine crash may.
+         */
+        NONE
+    }
+
+    /**
+     * Replayer - Receives the records of a journal in LSN order.
+     */
+    public interface Replayer {
+        /**
+         * A vehicle was added.
+         *
+         * @param id The ID of the vehicle.
+         */
+        void addVehicle(VehicleID id);
+
+        /**
+         * A customer was added, or a customer not added to the manager hired a vehicle.
+         *
+         * @param customerNum          The customer number.
+         * @param firstName            The first name.
+         * @param lastName             The last name.
+         * @param birthMillis          The date of birth, as milliseconds since the epoch.
+         * @param hasCommercialLicense Whether the customer has a commercial licence.
+         * @param registered           True if the customer was added to the manager.
+         */
+        void addCustomer(int customerNum, String firstName, String lastName, long birthMillis,
+                         boolean hasCommercialLicense, boolean registered);
+
+        /**
+         * A vehicle was hired.
+         *
+         * @param customerNum The hiring customer.
+         * @param id          The hired vehicle.
+         * @param duration    The duration of the hire in days.
+         * @param check       Whether the van was marked for a check on return.
+         * @param startMillis When the hire started, in milliseconds since the epoch.
+         * @param dueMillis   When the vehicle is due back, in milliseconds since the epoch.
+         */
+        void hire(int customerNum, VehicleID id, int duration, boolean check, long startMillis, long dueMillis);
+
+        /**
+         * A vehicle was returned. Any service or van check is a separate record.
+         *
+         * @param customerNum The returning customer.
+         * @param id          The returned vehicle.
+         * @param mileage     The mileage driven during the hire.
+         */
+        void returned(int customerNum, VehicleID id, int mileage);
+
+        /**
+         * A vehicle was serviced.
+         *
+         * @param id The serviced vehicle.
+         */
+        void service(VehicleID id);
+
+        /**
+         * A van was checked.
+         *
+         * @param id The checked van.
+         */
+        void vanCheck(VehicleID id);
+
+        /**
+         * A vehicle was retired and its ID released.
+         *
+         * @param id The retired vehicle.
+         */
+        void retireVehicle(VehicleID id);
+    }
+
+    // Record types.
+    private static final byte ADD_VEHICLE = 1;
+    private static final byte ADD_CUSTOMER = 2;
+    private static final byte HIRE = 3;
+    private static final byte RETURN = 4;
+    private static final byte SERVICE = 5;
+    private static final byte VAN_CHECK = 6;
+    private static final byte RETIRE_VEHICLE = 7;
+    // Record layout: int length, then length bytes of (long lsn, byte type, payload), then int CRC32C of those bytes.
+    private static final int HEADER = Integer.BYTES;
+    private static final int BODY_HEADER = Long.BYTES + 1;
+    private static final int TRAILER = Integer.BYTES;
+    private static final int MAX_BODY = 1 << 16;
+    private static final int INITIAL_BUFFER = 1 << 16;
+    private static final int READ_WINDOW = 1 << 18; // Bytes of a segment read at a time on replay; holds any record.
+
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private final Path dir;
+    private FileChannel channel; // The current segment; used only by the writer thread once it has started.
+    private final TreeMap<Long, Path> segments = new TreeMap<>(); // By first LSN; guarded by lock.
+    private final SyncPolicy policy;
+    private final long syncIntervalNanos;
+    private final Object lock = new Object(); // Guards the fields below and the pending buffer.
+    private ByteBuffer pending = ByteBuffer.allocate(INITIAL_BUFFER); // Records appended but not yet written.
+    private ByteBuffer writing = ByteBuffer.allocate(INITIAL_BUFFER); // Swapped with pending by the writer.
+    private int recordStart; // Position in pending of the record being appended.
+    private long lastLsn; // LSN of the last record appended.
+    private long writtenLsn; // LSN of the last record written to the file.
+    private long syncedLsn; // LSN of the last record forced to disk.
+    private IOException failure; // Set if the writer failed; the journal accepts no more records.
+    private boolean rollRequested;
+    private long rolledAt; // First LSN of the segment started by the last roll.
+    private boolean closed;
+    private final Thread writer;
+
+    /**
+     * Opens a journal, replays the records already in it after a given LSN and
+     * starts its writer thread. New records are appended to the last segment.
+     *
+     * @param dir          The directory holding the segment files; created if it does not exist.
+     * @param policy       When the journal is forced to disk.
+     * @param syncInterval The longest time between forces under SyncPolicy.INTERVAL.
+     * @param unit         The unit of syncInterval.
+     * @param afterLsn     The LSN already restored from a checkpoint, or 0; earlier records are skipped.
+     * @param replayer     Receives the records after afterLsn, or null to skip them.
+     * @throws IOException              if the segments cannot be read, or records after afterLsn are missing.
+     * @throws IllegalArgumentException if the policy is null or the interval is not positive.
+     */
+    public Journal(Path dir, SyncPolicy policy, long syncInterval, TimeUnit unit, long afterLsn,
+                   Replayer replayer) throws IOException {
+        if (policy == null)
+            throw new IllegalArgumentException("Sync policy cannot be null!");
+        if (syncInterval <= 0)
+            throw new IllegalArgumentException("Sync interval must be positive.");
+        this.dir = dir;
+        this.policy = policy;
+        this.syncIntervalNanos = unit.toNanos(syncInterval);
+        Files.createDirectories(dir);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    segments.put(Long.parseLong(name.substring(SEGMENT_PREFIX.length(),
+                            name.length() - SEGMENT_SUFFIX.length())), file);
+                } catch (NumberFormatException e) {
+                    // Not a segment.
+                }
+            }
+        }
+
+        long lsn = afterLsn;
+        List<Map.Entry<Long, Path>> ordered = new ArrayList<>(segments.entrySet());
+        for (int i = 0; i < ordered.size(); i++) {
+            long first = ordered.get(i).getKey();
+            boolean last = i == ordered.size() - 1;
+            if (!last && ordered.get(i + 1).getKey() <= afterLsn + 1)
+                continue; // Every record is covered by the checkpoint.
+            if (first > lsn + 1)
+                throw new IOException("Journal is missing records " + (lsn + 1) + " to " + (first - 1) + ".");
+            FileChannel segment = FileChannel.open(ordered.get(i).getValue(), StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            long end;
+            try {
+                end = replay(segment, first, afterLsn, replayer, last);
+            } catch (IOException | RuntimeException e) {
+                segment.close();
+                throw e;
+            }
+            if (last && end >= afterLsn)
+                channel = segment;
+            else
+                segment.close(); // A last segment ending before the checkpoint is left as it is.
+            lsn = Math.max(lsn, end);
+        }
+        if (channel == null) {
+            Path file = segmentPath(lsn + 1);
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            channel.truncate(0);
+            segments.put(lsn + 1, file);
+        }
+        lastLsn = lsn;
+        writtenLsn = lastLsn;
+        syncedLsn = lastLsn;
+        writer = new Thread(this::writeLoop, "fleet-journal-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Reads a segment from the start and passes each valid record after afterLsn to
+     * the replayer. The segment is read through a window of READ_WINDOW bytes that is
+     * refilled as records are used up, so a segment of any size is read in full.
+     * The last segment is cut at the first record that is incomplete or fails its
+     * checksum, and left positioned for appending.
+     *
+     * @param segment  The segment file.
+     * @param first    The LSN of the segment's first record.
+     * @param afterLsn Records up to this LSN are checked but not replayed.
+     * @param replayer Receives the records, or null.
+     * @param last     True for the last segment, which may have a torn tail.
+     * @return The LSN of the last valid record in the segment, or first - 1 if it has none.
+     * @throws IOException if the segment cannot be read, or a segment other than the last is damaged.
+     */
+    private static long replay(FileChannel segment, long first, long afterLsn, Replayer replayer,
+                               boolean last) throws IOException {
+        long size = segment.size();
+        ByteBuffer in = ByteBuffer.allocate(READ_WINDOW).limit(0);
+        long windowStart = 0; // File offset of the start of the window.
+        long read = 0; // File offset up to which the segment has been read.
+        CRC32C crc = new CRC32C();
+        long lsn = first - 1;
+        while (true) {
+            if (in.remaining() < HEADER + MAX_BODY + TRAILER && read < size) {
+                // Move the unread bytes to the front of the window and fill the rest.
+                windowStart += in.position();
+                in.compact();
+                int n = 0;
+                while (in.hasRemaining() && read < size && (n = segment.read(in, read)) >= 0)
+                    read += n;
+                in.flip();
+                if (n < 0)
+                    size = read; // The file was shorter than its size said.
+            }
+            if (in.remaining() < HEADER)
+                break;
+            int start = in.position();
+            int length = in.getInt(start);
+            int bodyStart = start + HEADER;
+            if (length < BODY_HEADER || length > MAX_BODY || in.remaining() < HEADER + length + TRAILER)
+                break;
+            crc.reset();
+            crc.update(in.array(), bodyStart, length);
+            if (in.getInt(bodyStart + length) != (int) crc.getValue() || in.getLong(bodyStart) != lsn + 1)
+                break;
+            byte type = in.get(bodyStart + Long.BYTES);
+            ByteBuffer body = in.slice(bodyStart + BODY_HEADER, length - BODY_HEADER);
+            lsn++;
+            if (replayer != null && lsn > afterLsn)
+                apply(replayer, type, body);
+            in.position(bodyStart + length + TRAILER);
+        }
+        long end = windowStart + in.position();
+        if (end < size) {
+            if (!last)
+                throw new IOException("Journal segment starting at " + first + " is damaged after record " + lsn + ".");
+            segment.truncate(end); // Drop a torn or damaged tail.
+        }
+        segment.position(end);
+        return lsn;
+    }
+
+    /**
+     * Decodes one record and passes it to the replayer.
+     *
+     * @param replayer Receives the record.
+     * @param type     The record type.
+     * @param body     The record payload.
+     * @throws IOException if the record type is unknown.
+     */
+    private static void apply(Replayer replayer, byte type, ByteBuffer body) throws IOException {
+        switch (type) {
+            case ADD_VEHICLE -> replayer.addVehicle(VehicleID.fromPacked(body.getInt()));
+            case ADD_CUSTOMER -> {
+                int customerNum = body.getInt();
+                long birth = body.getLong();
+                byte flags = body.get();
+                String firstName = getString(body);
+                String lastName = getString(body);
+                replayer.addCustomer(customerNum, firstName, lastName, birth, (flags & 1) != 0, (flags & 2) != 0);
+            }
+            case HIRE -> {
+                int customerNum = body.getInt();
+                VehicleID id = VehicleID.fromPacked(body.getInt());
+                int duration = body.getInt();
+                boolean check = body.get() != 0;
+                replayer.hire(customerNum, id, duration, check, body.getLong(), body.getLong());
+            }
+            case RETURN -> {
+                int customerNum = body.getInt();
+                VehicleID id = VehicleID.fromPacked(body.getInt());
+                replayer.returned(customerNum, id, body.getInt());
+            }
+            case SERVICE -> replayer.service(VehicleID.fromPacked(body.getInt()));
+            case VAN_CHECK -> replayer.vanCheck(VehicleID.fromPacked(body.getInt()));
+            case RETIRE_VEHICLE -> replayer.retireVehicle(VehicleID.fromPacked(body.getInt()));
+            default -> throw new IOException("Unknown journal record type " + type);
+        }
+    }
+
+    /**
+     * Appends an added vehicle.
+     *
+     * @param id The ID of the vehicle.
+     * @return The LSN of the record.
+     */
+    public long logAddVehicle(VehicleID id) {
+        synchronized (lock) {
+            ByteBuffer out = begin(ADD_VEHICLE, Integer.BYTES);
+            out.putInt(id.packed());
+            return end(out);
+        }
+    }
+
+    /**
+     * Appends an added customer.
+     *
+     * @param customer   The customer.
+     * @param registered True if the customer was added to the manager, false if the record
+     *                   only introduces a customer who hired without being added.
+     * @return The LSN of the record.
+     */
+    public long logAddCustomer(CustomerRecord customer, boolean registered) {
+        byte[] first = bytes(customer.getName().getFirstName());
+        byte[] last = bytes(customer.getName().getLastName());
+        synchronized (lock) {
+            ByteBuffer out = begin(ADD_CUSTOMER, Integer.BYTES + Long.BYTES + 1 + 2 * Integer.BYTES + first.length + last.length);
+            out.putInt(customer.getCustomerNum());
+            out.putLong(customer.getDateOfBirth().getTime());
+            out.put((byte) ((customer.hasCommercialLicense() ? 1 : 0) | (registered ? 2 : 0)));
+            out.putInt(first.length).put(first);
+            out.putInt(last.length).put(last);
+            return end(out);
+        }
+    }
+
+    /**
+     * Appends a hire.
+     *
+     * @param customerNum The hiring customer.
+     * @param id          The hired vehicle.
+     * @param duration    The duration of the hire in days.
+     * @param check       Whether the van was marked for a check on return.
+     * @param startMillis When the hire started, in milliseconds since the epoch.
+     * @param dueMillis   When the vehicle is due back, in milliseconds since the epoch.
+     * @return The LSN of the record.
+     */
+    public long logHire(int customerNum, VehicleID id, int duration, boolean check, long startMillis, long dueMillis) {
+        synchronized (lock) {
+            ByteBuffer out = begin(HIRE, 3 * Integer.BYTES + 1 + 2 * Long.BYTES);
+            out.putInt(customerNum).putInt(id.packed()).putInt(duration).put((byte) (check ? 1 : 0))
+                    .putLong(startMillis).putLong(dueMillis);
+            return end(out);
+        }
+    }
+
+    /**
+     * Appends a return.
+     *
+     * @param customerNum The returning customer.
+     * @param id          The returned vehicle.
+     * @param mileage     The mileage driven during the hire.
+     * @return The LSN of the record.
+     */
+    public long logReturn(int customerNum, VehicleID id, int mileage) {
+        synchronized (lock) {
+            ByteBuffer out = begin(RETURN, 3 * Integer.BYTES);
+            out.putInt(customerNum).putInt(id.packed()).putInt(mileage);
+            return end(out);
+        }
+    }
+
+    /**
+     * Appends a service.
+     *
+     * @param id The serviced vehicle.
+     * @return The LSN of the record.
+     */
+    public long logService(VehicleID id) {
+        synchronized (lock) {
+            ByteBuffer out = begin(SERVICE, Integer.BYTES);
+            out.putInt(id.packed());
+            return end(out);
+        }
+    }
+
+    /**
+     * Appends a van check.
+     *
+     * @param id The checked van.
+     * @return The LSN of the record.
+     */
+    public long logVanCheck(VehicleID id) {
+        synchronized (lock) {
+            ByteBuffer out = begin(VAN_CHECK, Integer.BYTES);
+            out.putInt(id.packed());
+            return end(out);
+        }
+    }
+
+    /**
+     * Appends a retired vehicle.
+     *
+     * @param id The ID of the retired vehicle.
+     * @return The LSN of the record.
+     */
+    public long logRetireVehicle(VehicleID id) {
+        synchronized (lock) {
+            ByteBuffer out = begin(RETIRE_VEHICLE, Integer.BYTES);
+            out.putInt(id.packed());
+            return end(out);
+        }
+    }
+
+    /**
+     * Starts a record in the pending buffer, growing it if needed.
+     * The caller must hold the lock.
+     *
+     * @param type        The record type.
+     * @param payloadSize The size of the payload in bytes.
+     * @return The pending buffer, positioned at the start of the payload.
+     * @throws IllegalStateException if the journal is closed or has failed.
+     */
+    private ByteBuffer begin(byte type, int payloadSize) {
+        if (closed)
+            throw new IllegalStateException("Journal is closed.");
+        if (failure != null)
+            throw new UncheckedIOException("Journal write failed.", failure);
+        int needed = HEADER + BODY_HEADER + payloadSize + TRAILER;
+        if (pending.remaining() < needed) {
+            ByteBuffer bigger = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + needed));
+            pending.flip();
+            bigger.put(pending);
+            pending = bigger;
+        }
+        recordStart = pending.position();
+        pending.putInt(BODY_HEADER + payloadSize);
+        pending.putLong(lastLsn + 1);
+        pending.put(type);
+        return pending;
+    }
+
+    /**
+     * Finishes the record started by begin: writes its checksum, assigns its LSN
+     * and wakes the writer. The caller must hold the lock.
+     *
+     * @param out The pending buffer.
+     * @return The LSN of the record.
+     */
+    private long end(ByteBuffer out) {
+        int bodyStart = recordStart + HEADER;
+        CRC32C crc = new CRC32C();
+        crc.update(out.array(), bodyStart, out.position() - bodyStart);
+        out.putInt((int) crc.getValue());
+        lastLsn++;
+        lock.notifyAll();
+        return lastLsn;
+    }
+
+    /**
+     * Waits, under SyncPolicy.COMMIT, until a record has been forced to disk.
+     * Under the other policies it returns at once.
+     *
+     * @param lsn The LSN of the record.
+     * @throws UncheckedIOException if the journal could not be written.
+     */
+    public void commit(long lsn) {
+        if (policy == SyncPolicy.COMMIT)
+            awaitSynced(lsn);
+    }
+
+    /**
+     * Waits until every record appended so far has been written and, unless the
+     * policy is NONE, forced to disk.
+     *
+     * @throws UncheckedIOException if the journal could not be written.
+     */
+    public void sync() {
+        long lsn;
+        synchronized (lock) {
+            lsn = lastLsn;
+        }
+        awaitSynced(lsn);
+    }
+
+    /**
+     * Waits until a record is durable under the journal's policy.
+     *
+     * @param lsn The LSN of the record.
+     */
+    private void awaitSynced(long lsn) {
+        boolean interrupted = false;
+        synchronized (lock) {
+            while ((policy == SyncPolicy.NONE ? writtenLsn : syncedLsn) < lsn) {
+                if (failure != null)
+                    throw new UncheckedIOException("Journal write failed.", failure);
+                if (closed && !writer.isAlive())
+                    throw new IllegalStateException("Journal is closed.");
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    interrupted = true; // Finish waiting; the record is already appended.
+                }
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    /**
+     * Starts a new segment. Records appended before the call are in older segments,
+     * and every later record goes to the new one.
+     *
+     * @return The LSN the new segment starts at.
+     * @throws UncheckedIOException  if the journal could not be written.
+     * @throws IllegalStateException if the journal is closed.
+     */
+    public long roll() {
+        boolean interrupted = false;
+        try {
+            synchronized (lock) {
+                if (closed)
+                    throw new IllegalStateException("Journal is closed.");
+                rollRequested = true;
+                lock.notifyAll();
+                while (rollRequested) {
+                    if (failure != null)
+                        throw new UncheckedIOException("Journal write failed.", failure);
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+                return rolledAt;
+            }
+        } finally {
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Deletes the segments whose records all have an LSN at or below the given one,
+     * for example because a checkpoint covers them. The current segment is kept.
+     *
+     * @param lsn The highest LSN that no longer needs to be kept.
+     * @return The number of segments deleted.
+     * @throws IOException if a segment cannot be deleted.
+     */
+    public int deleteSegmentsThrough(long lsn) throws IOException {
+        List<Path> doomed = new ArrayList<>();
+        synchronized (lock) {
+            Map.Entry<Long, Path> segment = segments.firstEntry();
+            while (segment != null) {
+                Map.Entry<Long, Path> next = segments.higherEntry(segment.getKey());
+                if (next == null || next.getKey() - 1 > lsn)
+                    break;
+                doomed.add(segment.getValue());
+                segments.remove(segment.getKey());
+                segment = next;
+            }
+        }
+        for (Path file : doomed)
+            Files.deleteIfExists(file);
+        return doomed.size();
+    }
+
+    /**
+     * Returns the number of segment files the journal currently has.
+     *
+     * @return The segment count.
+     */
+    public int segmentCount() {
+        synchronized (lock) {
+            return segments.size();
+        }
+    }
+
+    /**
+     * Returns the path of the segment whose first record has the given LSN.
+     *
+     * @param first The first LSN of the segment.
+     * @return The segment file path.
+     */
+    private Path segmentPath(long first) {
+        return dir.resolve(String.format("%s%019d%s", SEGMENT_PREFIX, first, SEGMENT_SUFFIX));
+    }
+
+    /**
+     * Returns the LSN of the last record appended.
+     *
+     * @return The last LSN, or 0 if the journal is empty.
+     */
+    public long lastLsn() {
+        synchronized (lock) {
+            return lastLsn;
+        }
+    }
+
+    /**
+     * Returns the policy that decides when the journal is forced to disk.
+     *
+     * @return The sync policy.
+     */
+    public SyncPolicy getSyncPolicy() {
+        return policy;
+    }
+
+    /**
+     * Writes and forces everything appended, stops the writer thread and closes the file.
+     *
+     * @throws IOException if the file cannot be closed or the writer had failed.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (lock) {
+            if (closed)
+                return;
+            closed = true;
+            lock.notifyAll();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+        synchronized (lock) {
+            lock.notifyAll();
+            if (failure != null)
+                throw failure;
+        }
+    }
+
+    /**
+     * Body of the writer thread: swaps out the pending buffer, writes it in one call,
+     * forces the file as the policy requires and wakes any waiting committers.
+     */
+    private void writeLoop() {
+        long lastSync = System.nanoTime();
+        while (true) {
+            long batchLsn;
+            boolean stopping;
+            boolean wantSync;
+            boolean roll;
+            synchronized (lock) {
+                while (pending.position() == 0 && !closed && !rollRequested && !dueSync(lastSync)) {
+                    try {
+                        if (policy == SyncPolicy.INTERVAL && syncedLsn < writtenLsn)
+                            lock.wait(Math.max(1, TimeUnit.NANOSECONDS.toMillis(syncIntervalNanos)));
+                        else
+                            lock.wait();
+                    } catch (InterruptedException e) {
+                        // Only close stops the writer.
+                    }
+                }
+                ByteBuffer batch = pending;
+                pending = writing;
+                writing = batch;
+                batchLsn = lastLsn;
+                stopping = closed;
+                roll = rollRequested;
+                wantSync = policy == SyncPolicy.COMMIT || stopping && policy != SyncPolicy.NONE
+                        || dueSync(lastSync);
+            }
+            try {
+                writing.flip();
+                while (writing.hasRemaining())
+                    channel.write(writing);
+                writing.clear();
+                if (wantSync) {
+                    channel.force(false);
+                    lastSync = System.nanoTime();
+                }
+                if (roll)
+                    rollSegment(batchLsn + 1);
+            } catch (IOException e) {
+                synchronized (lock) {
+                    failure = e;
+                    lock.notifyAll();
+                }
+                return;
+            }
+            synchronized (lock) {
+                writtenLsn = batchLsn;
+                if (wantSync)
+                    syncedLsn = batchLsn;
+                if (roll) {
+                    rolledAt = batchLsn + 1;
+                    rollRequested = false;
+                }
+                lock.notifyAll();
+                if (stopping && pending.position() == 0)
+                    return;
+            }
+        }
+    }
+
+    /**
+     * Closes the current segment and opens a new one, unless the current segment
+     * is still empty and already starts at the given LSN. Called by the writer thread.
+     *
+     * @param first The LSN of the first record of the new segment.
+     * @throws IOException if the segments cannot be closed or created.
+     */
+    private void rollSegment(long first) throws IOException {
+        synchronized (lock) {
+            if (segments.lastKey() == first)
+                return;
+        }
+        if (policy != SyncPolicy.NONE)
+            channel.force(false); // The old segment is complete; make it durable before leaving it.
+        channel.close();
+        Path file = segmentPath(first);
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        channel.truncate(0);
+        synchronized (lock) {
+            segments.put(first, file);
+        }
+    }
+
+    /**
+     * Checks whether a force is due under SyncPolicy.INTERVAL. The caller must hold the lock.
+     *
+     * @param lastSync When the file was last forced, from System.nanoTime.
+     * @return True if written records are waiting and the interval has passed.
+     */
+    private boolean dueSync(long lastSync) {
+        return policy == SyncPolicy.INTERVAL && syncedLsn < lastLsn
+                && System.nanoTime() - lastSync >= syncIntervalNanos;
+    }
+
+    /**
+     * Encodes a string as UTF-8, treating null as empty.
+     *
+     * @param s The string.
+     * @return The UTF-8 bytes.
+     */
+    private static byte[] bytes(String s) {
+        return s == null ? new byte[0] : s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads a length-prefixed UTF-8 string.
+     *
+     * @param in The buffer to read from.
+     * @return The string.
+     */
+    private static String getString(ByteBuffer in) {
+        byte[] b = new byte[in.getInt()];
+        in.get(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,165 @@
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * MaintenanceScheduler - Keeps vehicles ordered by the distance left before their next service.
+ * Vehicles with no distance left are due; they come first, most overdue first.
+ * Each vehicle is held under a key made of its remaining distance and its packed ID,
+ * so updating a vehicle and finding the next vehicles due both take O(log n),
+ * plus O(k) to list k vehicles.
+ * <p>
+ * Used by VehicleManager when scheduled maintenance is enabled; the manager
+ * updates the schedule whenever a vehicle is added, returned, serviced or retired.
+ * Updates are handed off through a lock-free queue, so returns never wait for the
+ * schedule. The queue is applied to the schedule by the next query, or by the
+ * update that finds it long and the schedule free.
+ *
+ * @author Ziyue Ren
+ * @see VehicleManager#setScheduledMaintenance(boolean)
+ * @see VehicleManager#recordService(VehicleID)
+ */
+public final class MaintenanceScheduler {
+    private static final int DRAIN_THRESHOLD = 1024; // Queued updates at which an update tries to apply them.
+
+    private final TreeMap<Long, Vehicle> schedule = new TreeMap<>(); // Guarded by lock.
+    private final Map<Vehicle, Long> keys = new HashMap<>(); // Each vehicle's current key; guarded by lock.
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ConcurrentLinkedQueue<Vehicle> pending = new ConcurrentLinkedQueue<>(); // Vehicles to reschedule.
+    private final AtomicInteger pendingCount = new AtomicInteger();
+
+    /**
+     * Queues a vehicle to be added to the schedule, moved to match its mileage,
+     * or dropped from it once retired.
+     * Never blocks: if the queue is long, the updates are applied only when no
+     * query holds the schedule.
+     *
+     * @param vehicle The vehicle.
+     */
+    void track(Vehicle vehicle) {
+        pending.add(vehicle);
+        if (pendingCount.incrementAndGet() >= DRAIN_THRESHOLD && lock.tryLock()) {
+            try {
+                drain();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Applies the queued updates to the schedule. The caller must hold the lock.
+     */
+    private void drain() {
+        Vehicle vehicle;
+        while ((vehicle = pending.poll()) != null) {
+            pendingCount.decrementAndGet();
+            reschedule(vehicle);
+        }
+    }
+
+    /**
+     * Moves a vehicle to the key for its current mileage, or removes it if it is retired.
+     * The caller must hold the lock.
+     *
+     * @param vehicle The vehicle.
+     */
+    private void reschedule(Vehicle vehicle) {
+        if (VehicleState.isRetired(vehicle.getState())) {
+            Long old = keys.remove(vehicle);
+            if (old != null)
+                schedule.remove(old);
+            return;
+        }
+        long key = key(vehicle);
+        Long old = keys.put(vehicle, key);
+        if (old != null)
+            schedule.remove(old);
+        schedule.put(key, vehicle);
+    }
+
+    /**
+     * Returns the vehicles closest to needing a service, nearest first.
+     * Vehicles that are already due come first, most overdue first.
+     *
+     * @param n The most vehicles to return.
+     * @return Up to n vehicles, in order of remaining distance.
+     * @throws IllegalArgumentException if n is negative.
+     */
+    public List<Vehicle> next(int n) {
+        if (n < 0)
+            throw new IllegalArgumentException("Number of vehicles cannot be negative.");
+        lock.lock();
+        try {
+            drain();
+            List<Vehicle> result = new ArrayList<>(Math.min(n, schedule.size()));
+            Iterator<Vehicle> it = schedule.values().iterator();
+            while (result.size() < n && it.hasNext())
+                result.add(it.next());
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the vehicles that are due a service, most overdue first.
+     *
+     * @param n The most vehicles to return.
+     * @return Up to n due vehicles.
+     * @throws IllegalArgumentException if n is negative.
+     */
+    public List<Vehicle> nextDue(int n) {
+        if (n < 0)
+            throw new IllegalArgumentException("Number of vehicles cannot be negative.");
+        lock.lock();
+        try {
+            drain();
+            List<Vehicle> result = new ArrayList<>();
+            Iterator<Vehicle> it = schedule.headMap(key(1, 0)).values().iterator(); // Remaining distance of 0 or less.
+            while (result.size() < n && it.hasNext())
+                result.add(it.next());
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of vehicles in the schedule.
+     *
+     * @return The number of vehicles.
+     */
+    public int size() {
+        lock.lock();
+        try {
+            drain();
+            return schedule.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the key of a vehicle at its current mileage.
+     *
+     * @param vehicle The vehicle.
+     * @return The key.
+     */
+    private static long key(Vehicle vehicle) {
+        int remaining = vehicle.getDistanceRequirement() - vehicle.getCurrentMileage();
+        return key(remaining, vehicle.getVehicleID().packed());
+    }
+
+    /**
+     * Orders by remaining distance, then by ID so that every vehicle has its own key.
+     *
+     * @param remaining The distance left before a service; negative when overdue.
+     * @param packed    The packed vehicle ID.
+     * @return The key.
+     */
+    private static long key(int remaining, int packed) {
+        return (long) remaining << 32 | (packed & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,34 @@
+/**
+ * RecoveryStats - What VehicleManager.openJournal restored at startup and how long it took.
+ *
+ * @param checkpointLsn   The journal LSN of the checkpoint loaded, or 0 if none was found.
+ * @param vehicles        The number of vehicles restored.
+ * @param customers       The number of customers restored.
+ * @param replayedRecords The number of journal records replayed after the checkpoint.
+ * @param loadNanos       The time taken to load the checkpoint and replay the journal, in nanoseconds.
+ * @author Ziyue Ren
+ * @see VehicleManager
+ * @see Checkpoint
+ */
+public record RecoveryStats(long checkpointLsn, int vehicles, int customers, long replayedRecords, long loadNanos) {
+
+    /**
+     * Returns the load time in milliseconds.
+     *
+     * @return The load time in milliseconds.
+     */
+    public long loadMillis() {
+        return loadNanos / 1_000_000;
+    }
+
+    /**
+     * Returns a one-line summary of the recovery.
+     *
+     * @return A summary of the recovery.
+     */
+    @Override
+    public String toString() {
+        return "Restored " + vehicles + " vehicles and " + customers + " customers from checkpoint "
+                + checkpointLsn + " and " + replayedRecords + " journal records in " + loadMillis() + " ms";
+    }
+}
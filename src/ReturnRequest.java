@@ -0,0 +1,24 @@
+/**
+ * ReturnRequest - One return in a batch passed to VehicleManager.returnVehicles.
+ *
+ * @param vehicleID The ID of the vehicle being returned.
+ * @param customer  The customer returning the vehicle.
+ * @param mileage   The mileage driven during the hire.
+ * @author Ziyue Ren
+ * @see VehicleManager
+ * @see ReturnStatus
+ */
+public record ReturnRequest(VehicleID vehicleID, CustomerRecord customer, int mileage) {
+
+    /**
+     * Creates a return request.
+     *
+     * @throws IllegalArgumentException if the vehicle ID or customer is null.
+     */
+    public ReturnRequest {
+        if (vehicleID == null)
+            throw new IllegalArgumentException("Vehicle ID cannot be null!");
+        if (customer == null)
+            throw new IllegalArgumentException("Customer cannot be null!");
+    }
+}
@@ -0,0 +1,20 @@
+/**
+ * ReturnStatus - The outcome of a vehicle return.
+ *
+ * @author Ziyue Ren
+ * @see VehicleManager
+ */
+public enum ReturnStatus {
+    /**
+     * The vehicle was returned.
+     */
+    RETURNED,
+    /**
+     * No vehicle in the system has the given ID.
+     */
+    UNKNOWN_VEHICLE,
+    /**
+     * The vehicle is not on hire to the given customer.
+     */
+    NOT_HIRED_BY_CUSTOMER
+}
@@ -0,0 +1,320 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * TimingWheel - A hierarchical timing wheel of deadlines.
+ * Time is cut into ticks. Each of the six levels is a ring of 64 slots, and a slot
+ * on level i covers 64^i ticks, so the wheel spans 2^36 ticks. A timer is put in the
+ * level that fits its distance from the current tick, in O(1), and is unlinked in
+ * O(1) when cancelled. Each tick expires the timers in one level-0 slot, and each
+ * time a lower ring wraps, one slot of the level above is moved down. A timer is
+ * moved at most once per level, so the work per tick is constant apart from the
+ * timers that actually expire.
+ * <p>
+ * A timer further away than the wheel spans is parked in the top level and placed
+ * again when it comes round.
+ * <p>
+ * Scheduling and cancelling never block: each hands the timer to a lock-free queue,
+ * and only the thread that advances the wheel links timers in and out of slots.
+ * The queue is applied at the start of each advance, or by a schedule or cancel that
+ * finds it long and the wheel free. A timer is either expired or cancelled, never
+ * both, whichever happens first.
+ *
+ * @param <T> The type of item each timer carries.
+ * @author Ziyue Ren
+ * @see VehicleManager#checkOverdue(long)
+ */
+public final class TimingWheel<T> {
+    private static final int BITS = 6; // 64 slots per level.
+    private static final int SLOTS = 1 << BITS;
+    private static final int MASK = SLOTS - 1;
+    private static final int LEVELS = 6;
+    private static final long SPAN = 1L << (BITS * LEVELS); // Ticks covered by the whole wheel.
+    private static final int DRAIN_THRESHOLD = 1024; // Queued timers at which a schedule or cancel tries to apply them.
+
+    /**
+     * Timer - A scheduled item, linked into one slot of the wheel.
+     *
+     * @param <T> The type of item.
+     */
+    public static final class Timer<T> {
+        private static final int LIVE = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED = 2;
+        private static final VarHandle STATE;
+
+        static {
+            try {
+                STATE = MethodHandles.lookup().findVarHandle(Timer.class, "state", int.class);
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        private final T item;
+        private final long deadlineTick;
+        private volatile int state; // LIVE until cancelled or expired; changed only by CAS.
+        private Timer<T> prev; // Links within the slot; both null when not linked. Guarded by the wheel lock.
+        private Timer<T> next;
+        private Timer<T>[] slot; // The head cell of the slot list, or null when not linked.
+        private int index;
+
+        /**
+         * Creates a timer.
+         *
+         * @param item         The item.
+         * @param deadlineTick The tick at which the timer expires.
+         */
+        private Timer(T item, long deadlineTick) {
+            this.item = item;
+            this.deadlineTick = deadlineTick;
+        }
+
+        /**
+         * Returns the item the timer carries.
+         *
+         * @return The item.
+         */
+        public T getItem() {
+            return item;
+        }
+    }
+
+    private final long tickMillis;
+    private final Timer<T>[][] wheel; // [level][slot] -> first timer in the slot; guarded by lock.
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ConcurrentLinkedQueue<Timer<T>> pending = new ConcurrentLinkedQueue<>(); // Timers to link or unlink.
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private long currentTick; // Every tick up to and including this one has been processed; guarded by lock.
+    private int size; // Linked timers; guarded by lock.
+
+    /**
+     * Creates an empty wheel.
+     *
+     * @param tickMillis The length of a tick in milliseconds.
+     * @param nowMillis  The current time, in milliseconds since the epoch.
+     * @throws IllegalArgumentException if tickMillis is not positive.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"}) // Generic array creation for the slots.
+    public TimingWheel(long tickMillis, long nowMillis) {
+        if (tickMillis <= 0)
+            throw new IllegalArgumentException("Tick length must be positive.");
+        this.tickMillis = tickMillis;
+        wheel = new Timer[LEVELS][SLOTS];
+        currentTick = Math.floorDiv(nowMillis, tickMillis);
+    }
+
+    /**
+     * Schedules an item to expire at a deadline. A deadline that has already passed
+     * expires on the next tick. Never blocks.
+     *
+     * @param item           The item.
+     * @param deadlineMillis The deadline, in milliseconds since the epoch.
+     * @return The timer, for cancelling.
+     */
+    public Timer<T> schedule(T item, long deadlineMillis) {
+        Timer<T> timer = new Timer<>(item, Math.floorDiv(deadlineMillis, tickMillis));
+        hand(timer);
+        return timer;
+    }
+
+    /**
+     * Cancels a timer. Never blocks; the timer is unlinked by the next advance.
+     *
+     * @param timer The timer.
+     * @return True if the timer was scheduled, false if it had expired or was cancelled already.
+     */
+    public boolean cancel(Timer<T> timer) {
+        if (!Timer.STATE.compareAndSet(timer, Timer.LIVE, Timer.CANCELLED))
+            return false;
+        hand(timer);
+        return true;
+    }
+
+    /**
+     * Moves the wheel forward to a time, passing every timer whose deadline tick has
+     * been reached to an action, in the order the ticks are reached. Schedules and
+     * cancels made while it runs are queued for the next advance.
+     * Called from a single thread at a time; the action may schedule and cancel timers.
+     *
+     * @param nowMillis The current time, in milliseconds since the epoch.
+     * @param expired   Receives each expired item.
+     * @return The number of timers that expired.
+     */
+    public int advance(long nowMillis, Consumer<? super T> expired) {
+        long target = Math.floorDiv(nowMillis, tickMillis);
+        int count = 0;
+        lock.lock();
+        try {
+            drain();
+            while (currentTick < target) {
+                if (size == 0) {
+                    currentTick = target; // Nothing to expire or cascade.
+                    break;
+                }
+                currentTick++;
+                cascade();
+                Timer<T>[] slots = wheel[0];
+                int index = (int) (currentTick & MASK);
+                Timer<T> t = slots[index];
+                slots[index] = null;
+                while (t != null) {
+                    Timer<T> next = t.next;
+                    t.prev = t.next = null;
+                    t.slot = null;
+                    if (t.deadlineTick > currentTick) {
+                        place(t, currentTick + 1); // Parked beyond the span; placed again.
+                    } else {
+                        size--;
+                        if (Timer.STATE.compareAndSet(t, Timer.LIVE, Timer.EXPIRED)) { // Not cancelled meanwhile.
+                            count++;
+                            expired.accept(t.item);
+                        }
+                    }
+                    t = next;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of scheduled timers.
+     *
+     * @return The number of timers.
+     */
+    public int size() {
+        lock.lock();
+        try {
+            drain();
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes every timer and moves the wheel to a time.
+     *
+     * @param nowMillis The current time, in milliseconds since the epoch.
+     */
+    public void clear(long nowMillis) {
+        lock.lock();
+        try {
+            pending.clear();
+            pendingCount.set(0);
+            for (Timer<T>[] level : wheel)
+                Arrays.fill(level, null);
+            size = 0;
+            currentTick = Math.floorDiv(nowMillis, tickMillis);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Queues a scheduled or cancelled timer for the thread that advances the wheel.
+     * If the queue is long, applies it, but only when the wheel is free.
+     *
+     * @param timer The timer.
+     */
+    private void hand(Timer<T> timer) {
+        pending.add(timer);
+        if (pendingCount.incrementAndGet() >= DRAIN_THRESHOLD && lock.tryLock()) {
+            try {
+                drain();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Links in the queued timers that are still live and unlinks the cancelled ones.
+     * A timer cancelled before it was linked is never linked. The caller must hold the lock.
+     */
+    private void drain() {
+        Timer<T> timer;
+        while ((timer = pending.poll()) != null) {
+            pendingCount.decrementAndGet();
+            int state = timer.state;
+            if (state == Timer.CANCELLED && timer.slot != null) {
+                unlink(timer);
+                size--;
+            } else if (state == Timer.LIVE && timer.slot == null) {
+                place(timer, currentTick + 1);
+                size++;
+            }
+        }
+    }
+
+    /**
+     * Moves the timers of one higher-level slot down for every ring that has just
+     * wrapped at the current tick.
+     */
+    private void cascade() {
+        for (int level = 1; level < LEVELS; level++) {
+            if (((currentTick >>> (BITS * (level - 1))) & MASK) != 0)
+                return; // The ring below has not wrapped.
+            Timer<T>[] slots = wheel[level];
+            int index = (int) ((currentTick >>> (BITS * level)) & MASK);
+            Timer<T> t = slots[index];
+            slots[index] = null;
+            while (t != null) {
+                Timer<T> next = t.next;
+                t.prev = t.next = null;
+                t.slot = null;
+                place(t, currentTick); // The current level-0 slot is expired after the cascade.
+                t = next;
+            }
+        }
+    }
+
+    /**
+     * Links a timer into the slot for its deadline, relative to the current tick.
+     *
+     * @param timer    The timer.
+     * @param earliest The earliest tick the timer can still be expired at.
+     */
+    private void place(Timer<T> timer, long earliest) {
+        long tick = Math.max(timer.deadlineTick, earliest);
+        if (tick - currentTick >= SPAN)
+            tick = currentTick + SPAN - 1; // Parked at the far end of the wheel.
+        long delta = tick - currentTick;
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= 1L << (BITS * (level + 1)))
+            level++;
+        Timer<T>[] slots = wheel[level];
+        int index = (int) ((tick >>> (BITS * level)) & MASK);
+        Timer<T> head = slots[index];
+        timer.next = head;
+        if (head != null)
+            head.prev = timer;
+        slots[index] = timer;
+        timer.slot = slots;
+        timer.index = index;
+    }
+
+    /**
+     * Unlinks a scheduled timer from its slot.
+     *
+     * @param timer The timer.
+     */
+    private void unlink(Timer<T> timer) {
+        if (timer.prev != null)
+            timer.prev.next = timer.next;
+        else
+            timer.slot[timer.index] = timer.next;
+        if (timer.next != null)
+            timer.next.prev = timer.prev;
+        timer.prev = timer.next = null;
+        timer.slot = null;
+    }
+}
@@ -9,17 +9,32 @@
 
 public final class Van extends AbstractVehicle {
     /**
-     * Indicates whether the van requires an inspection.
+     * Constructor for Van.
+     * Initializes the van; the inspection requirement starts as false.
+     * The flag itself is kept in the state word of AbstractVehicle.
      */
-    private boolean needCheck;
+    public Van() {
+        super(VehicleType.VAN);
+    }
 
     /**
-     * Constructor for Van.
-     * Initializes the van and sets the inspection requirement to false.
+     * Constructor for a Van view over a record, such as one in a VehicleStore.
+     *
+     * @param records The records holding the van's record.
+     * @param record  The record number.
      */
-    public Van() {
-        super("Van");
-        needCheck = false;
+    Van(VehicleRecords records, int record) {
+        super(VehicleType.VAN, records, record);
+    }
+
+    /**
+     * Returns the type of the vehicle, which is the same for every van.
+     *
+     * @return VehicleType.VAN.
+     */
+    @Override
+    public VehicleType getType() {
+        return VehicleType.VAN;
     }
 
     /**
@@ -28,7 +43,7 @@ public final class Van extends AbstractVehicle {
      * @return True if the van needs an inspection, false otherwise.
      */
     public boolean needCheck() {
-        return needCheck;
+        return isCheckFlagged();
     }
 
     /**
@@ -37,6 +52,15 @@ public final class Van extends AbstractVehicle {
      * @param flag True to mark the van as needing an inspection, false otherwise.
      */
     public void setCheck(boolean flag) {
-        needCheck = flag;
+        setCheckFlag(flag);
+    }
+
+    /**
+     * Clears the inspection requirement if it is set, in one atomic step.
+     *
+     * @return True if this call cleared the requirement, false if the van did not need an inspection.
+     */
+    boolean clearCheck() {
+        return clearCheckFlag();
     }
 }
@@ -23,6 +23,12 @@ public interface Vehicle {
 	 */
 	String getVehicleType();
 
+	/**
+	 * Returns the Vehicle type as an enum constant.
+	 * @return the vehicle type
+	 */
+	VehicleType getType();
+
 
 	/**
 	 * Indicates whether the vehicle is currently hired or not. 
@@ -60,6 +66,26 @@ public interface Vehicle {
 	 */
 	public boolean performServiceIfDue();
 
+	/**
+	 * Returns the packed state word of the vehicle: mileage, hired flag and
+	 * inspection flag read together in one step.
+	 * @return the state word, decoded with VehicleState
+	 */
+	long getState();
+
+	/**
+	 * Atomically marks the vehicle as hired if it is not hired, is below its
+	 * service distance and is not awaiting an inspection.
+	 * @return true if this call claimed the vehicle; false otherwise
+	 */
+	boolean tryClaim();
+
+	/**
+	 * Atomically marks the vehicle as not hired.
+	 * @return true if the vehicle was hired before the call; false otherwise
+	 */
+	boolean release();
+
 
 }
 
@@ -1,79 +1,311 @@
-import java.util.HashSet;
-import java.util.Objects;
-import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * VehicleID - Represents a unique identifier for a vehicle.
  * Ensures uniqueness and bases on generation rules
+ * <p>
+ * The identity is held as a single packed int: the bits from 17 up hold the
+ * ordinal of the VehicleType and the low 17 bits are the slot within the type's ID space.
+ * The code and number strings are taken from shared tables rather than built per ID,
+ * and the hash code is the packed value itself.
  *
  * @author Ziyue Ren
  * @see Vehicle
  */
 public final class VehicleID {
-    private final String code;
-    private final String numCode;
-    private static final Set<VehicleID> vehicleIDs = new HashSet<>();
+    private final int packed;
+    private String text; // Built on first call to toString().
     public static final String CAR = "car";
     public static final String VAN = "van";
+    // Each type has 26 letters x 10 digits x 500 numbers = 130000 possible IDs.
+    // Issued IDs are recorded in one bitmap per type (about 16 KB each), indexed by slot.
+    private static final int NUMBERS_PER_PREFIX = 500;
+    private static final int PREFIXES = 26 * 10;
+    private static final int SLOTS_PER_TYPE = PREFIXES * NUMBERS_PER_PREFIX;
+    private static final int TYPE_SHIFT = 17; // Above the largest slot (129999 < 2^17).
+    private static final int SLOT_MASK = (1 << TYPE_SHIFT) - 1;
+    private static final VehicleType[] TYPES = VehicleType.values();
+    private static final IdSpace[] spaces = new IdSpace[TYPES.length]; // Indexed by type ordinal.
+    // Shared code strings ("CA0".."VZ9") per type, and number strings ("000".."999").
+    private static final String[][] CODES = new String[TYPES.length][];
+    private static final String[] NUMBERS = buildNumbers();
+
+    static {
+        for (VehicleType type : TYPES) {
+            spaces[type.ordinal()] = new IdSpace();
+            CODES[type.ordinal()] = buildCodes(type.getIdPrefix());
+        }
+    }
 
     /**
      * Private constructor to create a VehicleID instance.
      * This ensures that VehicleID objects can only be created through the static factory method.
      *
-     * @param code    The alphanumeric code for the vehicle.
-     * @param numCode The numeric code for the vehicle.
+     * @param packed The packed type and slot of the ID.
      */
-    private VehicleID(String code, String numCode) {
-        this.code = code;
-        this.numCode = numCode;
+    private VehicleID(int packed) {
+        this.packed = packed;
     }
 
     /**
      * Static factory method to create or retrieve a unique VehicleID instance.
-     * Ensures that no two VehicleID objects have the same code and numCode combination.
+     * Ensures that no two live VehicleID objects have the same code and numCode combination.
+     * Runs in bounded time: a free slot is found by scanning a bitmap of issued IDs
+     * from a random starting point, rather than by retrying random guesses.
      *
      * @param type The type of vehicle ("car" or "van").
      * @return A unique VehicleID instance.
+     * @throws IllegalArgumentException if the type is invalid.
+     * @throws IllegalStateException    if every ID for the type has been issued.
      */
     public static VehicleID getInstance(String type) {
-        VehicleID id;
-        do {
-            if (type.equalsIgnoreCase(CAR)) {
-                id = new VehicleID(generateCode(CAR), generateNum(CAR));
-            } else if (type.equalsIgnoreCase(VAN)) {
-                id = new VehicleID(generateCode(VAN), generateNum(VAN));
-            } else {
-                throw new IllegalArgumentException("Invalid vehicle type: " + type);
-            }
-        } while (!vehicleIDs.add(id)); // Ensure uniqueness by adding to the set.
-        return id;
+        return getInstance(VehicleType.of(type));
     }
 
     /**
-     * Generates a random alphanumeric code for the vehicle.
+     * Static factory method to create a unique VehicleID for a vehicle type.
      *
-     * @param type The type of vehicle ("car" or "van").
-     * @return A string representing the alphanumeric code.
+     * @param type The type of vehicle.
+     * @return A unique VehicleID instance.
+     * @throws IllegalStateException if every ID for the type has been issued.
      */
-    private static String generateCode(String type) {
-        char typeChar = type.equalsIgnoreCase(CAR) ? 'C' : 'V';
-        char randomLetter = (char) ('A' + (int) (Math.random() * 26));
-        char randomNum = (char) ('0' + (int) (Math.random() * 10));
-        return "" + typeChar + randomLetter + randomNum;
+    public static VehicleID getInstance(VehicleType type) {
+        return new VehicleID(type.ordinal() << TYPE_SHIFT | spaces[type.ordinal()].allocate(type));
     }
 
     /**
-     * Generates a random numeric code for the vehicle.
-     * Ensures that the code is even for cars and odd for vans.
+     * Parses a VehicleID from its text form, e.g. "CA1-042".
+     * The result is equal to the issued ID with the same text, so it can be used
+     * for lookups. It does not issue or register the ID.
      *
-     * @param type The type of vehicle ("car" or "van").
-     * @return A string representing the numeric code.
+     * @param text The text form of the ID.
+     * @return The VehicleID with that text form.
+     * @throws IllegalArgumentException if the text is not a valid car or van ID.
      */
-    private static String generateNum(String type) {
-        int even = (int) (Math.random() * 500) * 2;
-        return type.equalsIgnoreCase(CAR)
-                ? String.format("%03d", even)
-                : String.format("%03d", (even + 1));
+    public static VehicleID parse(String text) {
+        if (text == null || text.length() != 7 || text.charAt(3) != '-')
+            throw new IllegalArgumentException("Invalid vehicle ID: " + text);
+        VehicleType type = VehicleType.fromIdPrefix(text.charAt(0));
+        char letter = text.charAt(1);
+        char digit = text.charAt(2);
+        int number = 0;
+        for (int i = 4; i < 7; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9')
+                throw new IllegalArgumentException("Invalid vehicle ID: " + text);
+            number = number * 10 + (c - '0');
+        }
+        if (type == null || letter < 'A' || letter > 'Z' || digit < '0' || digit > '9'
+                || (number & 1) != type.getIdParity()) // Cars have even numbers, vans odd.
+            throw new IllegalArgumentException("Invalid vehicle ID: " + text);
+        int slot = ((letter - 'A') * 10 + (digit - '0')) * NUMBERS_PER_PREFIX + number / 2;
+        return new VehicleID(type.ordinal() << TYPE_SHIFT | slot);
+    }
+
+    /**
+     * Releases an issued ID so that it can be issued again.
+     * No vehicle in the manager may hold the ID: a later vehicle given the same ID
+     * would replace it in the manager's index. The manager releases the ID of a vehicle
+     * once it has retired it, and an ID that it issued for a vehicle it then failed to add.
+     *
+     * @param id The ID to release.
+     * @return True if the ID was issued and is now free, false if it was not issued.
+     */
+    static boolean release(VehicleID id) {
+        return id.space().release(id.slot());
+    }
+
+    /**
+     * Marks an ID as issued again, for example when a vehicle is restored from the journal.
+     * Does nothing if the ID is already issued.
+     *
+     * @param id The ID to restore.
+     * @return True if the ID was free and is now issued, false if it was already issued.
+     */
+    public static boolean restore(VehicleID id) {
+        return id.space().reserve(id.slot());
+    }
+
+    /**
+     * Returns the ID with the given packed value, as returned by packed().
+     * It does not issue or register the ID.
+     *
+     * @param packed The packed type and slot.
+     * @return The VehicleID with that packed value.
+     * @throws IllegalArgumentException if the value is not a valid packed ID.
+     */
+    static VehicleID fromPacked(int packed) {
+        int type = packed >>> TYPE_SHIFT;
+        if (type >= TYPES.length || (packed & SLOT_MASK) >= SLOTS_PER_TYPE)
+            throw new IllegalArgumentException("Invalid packed vehicle ID: " + packed);
+        return new VehicleID(packed);
+    }
+
+    /**
+     * Returns the vehicle type of a packed ID without creating the ID.
+     *
+     * @param packed The packed type and slot.
+     * @return The vehicle type.
+     */
+    static VehicleType typeOf(int packed) {
+        return TYPES[packed >>> TYPE_SHIFT];
+    }
+
+    /**
+     * Returns the packed type and slot of this ID, used as its compact binary form.
+     *
+     * @return The packed value.
+     */
+    int packed() {
+        return packed;
+    }
+
+    /**
+     * Checks whether an ID is currently issued.
+     * Allocation-free: reads a single bit of the registry.
+     *
+     * @param id The ID to check.
+     * @return True if the ID is issued, false otherwise.
+     */
+    public static boolean isIssued(VehicleID id) {
+        return id.space().contains(id.slot());
+    }
+
+    /**
+     * Returns the type of vehicle this ID belongs to.
+     *
+     * @return The vehicle type.
+     */
+    public VehicleType getType() {
+        return TYPES[packed >>> TYPE_SHIFT];
+    }
+
+    /**
+     * Returns the ID space this ID was issued from.
+     *
+     * @return The ID space of this ID's type.
+     */
+    private IdSpace space() {
+        return spaces[packed >>> TYPE_SHIFT];
+    }
+
+    /**
+     * Returns the slot of this ID within its type's ID space.
+     *
+     * @return The ID slot.
+     */
+    private int slot() {
+        return packed & SLOT_MASK;
+    }
+
+    /**
+     * Builds the code strings for one type, indexed by letter/digit prefix.
+     *
+     * @param typeChar The type prefix ('C' or 'V').
+     * @return The 260 code strings for the type.
+     */
+    private static String[] buildCodes(char typeChar) {
+        String[] codes = new String[PREFIXES];
+        for (int prefix = 0; prefix < PREFIXES; prefix++)
+            codes[prefix] = new String(new char[]{typeChar, (char) ('A' + prefix / 10), (char) ('0' + prefix % 10)});
+        return codes;
+    }
+
+    /**
+     * Builds the zero-padded number strings "000" to "999".
+     *
+     * @return The number strings, indexed by value.
+     */
+    private static String[] buildNumbers() {
+        String[] numbers = new String[NUMBERS_PER_PREFIX * 2];
+        for (int n = 0; n < numbers.length; n++)
+            numbers[n] = String.format("%03d", n);
+        return numbers;
+    }
+
+    /**
+     * IdSpace - Tracks which ID slots of one vehicle type have been issued.
+     * One bit per slot; this is the registry of issued IDs.
+     * Callers for different types do not share a lock.
+     */
+    private static final class IdSpace {
+        private final long[] issued = new long[(SLOTS_PER_TYPE + 63) / 64];
+        private int count;
+
+        /**
+         * Creates an empty space. Bits past the last real slot are marked as
+         * issued so that a scan can never return them.
+         */
+        IdSpace() {
+            int tail = SLOTS_PER_TYPE & 63;
+            if (tail != 0)
+                issued[issued.length - 1] = -1L << tail;
+        }
+
+        /**
+         * Picks a random slot and takes the first free slot at or after it, wrapping around.
+         * Whole 64-slot words are skipped at once, so the cost is bounded by the bitmap size
+         * however full the space is.
+         *
+         * @param type The vehicle type, used in the error message.
+         * @return The allocated slot.
+         * @throws IllegalStateException if every slot has been issued.
+         */
+        synchronized int allocate(VehicleType type) {
+            if (count == SLOTS_PER_TYPE)
+                throw new IllegalStateException("All " + SLOTS_PER_TYPE + " " + type.getName() + " IDs have been issued.");
+            int start = ThreadLocalRandom.current().nextInt(SLOTS_PER_TYPE);
+            int word = start >>> 6;
+            long free = ~issued[word] & (-1L << (start & 63)); // Free slots at or after start in the first word.
+            while (free == 0) { // Terminates because at least one slot is free.
+                word = (word + 1) % issued.length;
+                free = ~issued[word];
+            }
+            int slot = (word << 6) + Long.numberOfTrailingZeros(free);
+            issued[word] |= 1L << (slot & 63);
+            count++;
+            return slot;
+        }
+
+        /**
+         * Marks a slot as free.
+         *
+         * @param slot The slot to free.
+         * @return True if the slot was issued, false otherwise.
+         */
+        synchronized boolean release(int slot) {
+            long bit = 1L << (slot & 63);
+            if ((issued[slot >>> 6] & bit) == 0)
+                return false;
+            issued[slot >>> 6] &= ~bit;
+            count--;
+            return true;
+        }
+
+        /**
+         * Marks a slot as issued.
+         *
+         * @param slot The slot to issue.
+         * @return True if the slot was free, false if it was already issued.
+         */
+        synchronized boolean reserve(int slot) {
+            long bit = 1L << (slot & 63);
+            if ((issued[slot >>> 6] & bit) != 0)
+                return false;
+            issued[slot >>> 6] |= bit;
+            count++;
+            return true;
+        }
+
+        /**
+         * Checks whether a slot is issued.
+         *
+         * @param slot The slot to check.
+         * @return True if the slot is issued, false otherwise.
+         */
+        synchronized boolean contains(int slot) {
+            return (issued[slot >>> 6] & (1L << (slot & 63))) != 0;
+        }
     }
 
     /**
@@ -82,16 +314,17 @@ public final class VehicleID {
      * @return The alphanumeric code.
      */
     public String getCode() {
-        return code;
+        return CODES[packed >>> TYPE_SHIFT][slot() / NUMBERS_PER_PREFIX];
     }
 
     /**
      * Returns the numeric code of the vehicle.
+     * The number is even for cars and odd for vans.
      *
      * @return The numeric code.
      */
     public String getNumCode() {
-        return numCode;
+        return NUMBERS[(slot() % NUMBERS_PER_PREFIX) * 2 + getType().getIdParity()];
     }
 
     /**
@@ -102,12 +335,18 @@ public final class VehicleID {
      */
     @Override
     public String toString() {
-        return code + "-" + numCode;
+        String t = text;
+        if (t == null) {
+            t = getCode() + "-" + getNumCode();
+            text = t; // A racing thread may build an equal string; either copy is fine.
+        }
+        return t;
     }
 
     /**
      * Checks if this VehicleID is equal to another object.
-     * Two VehicleID objects are considered equal if their code and numCode are the same.
+     * Two VehicleID objects are considered equal if their code and numCode are the same,
+     * which is the case exactly when their packed values are the same.
      *
      * @param o The object to compare with.
      * @return True if the objects are equal, false otherwise.
@@ -117,19 +356,19 @@ public final class VehicleID {
         if (this == o)
             return true;
         if (o instanceof VehicleID id)
-            return this.numCode.equals(id.numCode) && this.code.equals(id.code);
+            return this.packed == id.packed;
         else
             return false;
     }
 
     /**
      * Returns the hash code for this VehicleID.
-     * The hash code is based on the code and numCode.
+     * The packed value is already unique per ID, so it is used directly.
      *
      * @return The hash code of this VehicleID.
      */
     @Override
     public int hashCode() {
-        return Objects.hash(numCode, code);
+        return packed;
     }
-}
\ No newline at end of file
+}
@@ -1,3 +1,6 @@
+import java.util.HashSet;
+import java.util.Set;
+
 /**
  * VehicleIDTest – Verifies the logic and business rules of the VehicleID class.
  *
@@ -21,6 +24,9 @@ public class VehicleIDTest {
             test.testEquals();
             test.testHashCode();
             test.testIdRules();
+            test.testRelease();
+            test.testParse();
+            test.testExhaustion();
             //testUniqueness();
         } catch (AssertionError e) {
             System.err.println("\nTest failed: " + e.getMessage());
@@ -67,6 +73,79 @@ public class VehicleIDTest {
         Assertions.assertTrue(vanNum % 2 != 0);
     }
 
+    /**
+     * Fills the whole van ID space and checks that every ID is unique and valid,
+     * that the next request fails fast instead of looping forever, and that
+     * a released ID is the next one issued once the space is full.
+     */
+    private void testExhaustion() {
+        System.out.println("Test ID space exhaustion.");
+        Set<String> seen = new HashSet<>();
+        VehicleID kept = null;
+        try {
+            while (true) {
+                VehicleID id = VehicleID.getInstance(VehicleID.VAN);
+                kept = id;
+                Assertions.assertTrue(seen.add(id.toString()));
+                Assertions.assertTrue(id.getCode().charAt(0) == 'V');
+                Assertions.assertTrue(Integer.parseInt(id.getNumCode()) % 2 != 0);
+            }
+        } catch (IllegalStateException e) {
+            //expected once every van ID has been issued
+        }
+        Assertions.assertTrue(seen.size() > 129000);
+        try {
+            VehicleID.getInstance(VehicleID.VAN);
+            Assertions.assertNotReached();
+        } catch (Throwable t) {
+            Assertions.assertExpectedThrowable(IllegalStateException.class, t);
+        }
+
+        Assertions.assertTrue(VehicleID.release(kept));
+        Assertions.assertEquals(kept, VehicleID.getInstance(VehicleID.VAN));
+        Assertions.assertTrue(VehicleID.isIssued(kept));
+    }
+
+    /**
+     * Checks that a released ID is no longer issued and can be released only once.
+     */
+    private void testRelease() {
+        System.out.println("Test ID release.");
+        VehicleID car = VehicleID.getInstance(VehicleID.CAR);
+        Assertions.assertTrue(VehicleID.isIssued(car));
+        Assertions.assertTrue(VehicleID.release(car));
+        Assertions.assertFalse(VehicleID.isIssued(car));
+        Assertions.assertFalse(VehicleID.release(car));
+    }
+
+    /**
+     * Checks that parsing the text form of an ID gives an equal ID,
+     * and that malformed text is rejected.
+     */
+    private void testParse() {
+        System.out.println("Test parse.");
+        VehicleID car = VehicleID.getInstance(VehicleID.CAR);
+        VehicleID van = VehicleID.getInstance(VehicleID.VAN);
+        VehicleID parsedCar = VehicleID.parse(car.toString());
+        Assertions.assertEquals(car, parsedCar);
+        Assertions.assertEquals(car.hashCode(), parsedCar.hashCode());
+        Assertions.assertEquals(car.getCode(), parsedCar.getCode());
+        Assertions.assertEquals(car.getNumCode(), parsedCar.getNumCode());
+        Assertions.assertEquals(van, VehicleID.parse(van.toString()));
+        Assertions.assertEquals("CA1-042", VehicleID.parse("CA1-042").toString());
+        Assertions.assertEquals("VZ9-999", VehicleID.parse("VZ9-999").toString());
+
+        String[] invalid = {"CA1-043", "VA1-042", "XA1-042", "Ca1-042", "CA1042", "CA1-04x", "", null};
+        for (String text : invalid) {
+            try {
+                VehicleID.parse(text);
+                Assertions.assertNotReached();
+            } catch (Throwable t) {
+                Assertions.assertExpectedThrowable(IllegalArgumentException.class, t);
+            }
+        }
+    }
+
     /**
      * Checks if toString returns non-null and contains the separator.
      */
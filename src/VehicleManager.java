@@ -5,11 +5,53 @@
  * Copyright (C) 2026 Newcastle University, UK
  */
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiConsumer;
+import java.util.function.IntConsumer;
+import java.util.function.LongFunction;
 
 /**
  * VehicleManager - Manages vehicles and customer records in the rental system.
  * Implements a singleton pattern to ensure a single instance.
+ * <p>
+ * Hires and returns may run on many threads at once. Each customer's hire set is
+ * guarded by one of a fixed number of lock stripes chosen by customer number, and
+ * each free pool is guarded by its own lock, so unrelated customers and vehicle
+ * types do not contend with each other. A vehicle is claimed with an atomic
+ * compare-and-set on its state word, so only one thread can win it.
+ * <p>
+ * Outcomes are returned to callers as HireResult and ReturnStatus values and
+ * published as FleetEvents to an asynchronous EventLog; nothing is printed on
+ * the hire or return path. Register a ConsoleEventSink for console output.
+ * <p>
+ * Every change to vehicles, customers or hires runs as a write section that is
+ * counted in and out. snapshot() copies the state optimistically and keeps the
+ * copy only if no write section was active or started while it was taken, so
+ * reporting does not hold up hires and returns.
+ * <p>
+ * When a Journal is opened, every change is also appended to it while the locks
+ * that order the change are held, and the journal is replayed on the next start.
+ * <p>
+ * Alternatively, vehicles can be kept in a memory-mapped VehicleStore, which holds
+ * each vehicle's state in a fixed-width record instead of on the heap and is
+ * reopened on the next start without replaying anything.
+ * <p>
+ * By default a return services the vehicle and clears a van's inspection flag.
+ * setScheduledMaintenance and startInspections move that work off the return
+ * path, to a maintenance schedule and to a queue of inspection workers.
  *
  * @author Ziyue Ren
  * @see Vehicle
@@ -19,19 +61,133 @@ import java.util.*;
 public final class VehicleManager {
     private final List<Vehicle> allVehicles; // List of all vehicles in the system.
     private final List<CustomerRecord> customers;    //List of all customers in the system.
+    // Hashed indexes over the customers list, by name and date of birth (CustomerRecord.equals)
+    // and by customer number. Changed together with the list under its lock.
+    private final Set<CustomerRecord> customerIndex;
+    private final Map<Integer, CustomerRecord> customersByNumber;
     // Map of hired vehicles, keyed by customer number.
     // Each customer can have a set of vehicles they have rented.
+    // A customer's set is only read or changed while holding that customer's lock stripe.
     private final Map<Integer, Set<Vehicle>> hiredVehicles;
+    // Index of every vehicle by ID, and the current hire of each hired vehicle.
+    // A vehicle's hire entry changes only under the hiring customer's lock stripe.
+    private final Map<VehicleID, Vehicle> vehiclesById;
+    private final Map<VehicleID, HireRecord> hires;
+    // Due times of the current hires, and the hires found still out after theirs.
+    // Hires and returns only queue timers; the wheel is advanced by checkOverdue.
+    private final TimingWheel<HireRecord> dueTimes;
+    private final Set<HireRecord> overdue;
+    private static final long OVERDUE_TICK_MILLIS = 1000; // Overdue hires are flagged within a tick of their due time.
+    // Bumped after every change to the hire sets, under the customer's lock stripe.
+    // getHiredVehicles reuses its last snapshot while the version is unchanged.
+    private final AtomicLong hireVersion;
+    private volatile HireSnapshot hiredSnapshot;
+    // Counts of write sections begun and ended. They are equal when no write is in progress.
+    private final LongAdder writesBegun;
+    private final LongAdder writesEnded;
+    // Set while a snapshot that gave up on optimistic copying holds new write sections back.
+    // The snapshot holds snapshotGate for as long as the flag is set.
+    private volatile boolean snapshotPending;
+    private final Object snapshotGate;
+    private static final int SNAPSHOT_ATTEMPTS = 8; // Optimistic copies before holding writers back.
+    private final LongAdder heldCopies; // Copies that gave up on optimistic copying and held writers back.
+    private static final int CUSTOMER_STRIPES = 64; // Must be a power of two.
+    private static final long NOT_RETURNED = -1; // Returned by returnLocked when the customer was not hiring the vehicle.
+    private final Object[] customerLocks;
+    // Pools of hireable vehicles (not hired, not due a service, not awaiting a van check),
+    // indexed by VehicleType ordinal. Each pool is guarded by its own monitor.
+    private final Deque<Vehicle>[] freePools;
+    // Live counts of vehicles that are not hired, indexed by VehicleType ordinal.
+    private final AtomicIntegerArray available;
+    private final EventLog events; // Hire, return, service and van check events.
+    private volatile Journal journal; // Write-ahead log of changes, or null if none is open.
+    private Path journalDir; // Directory of the open journal and its checkpoints; guarded by journalLock.
+    private ScheduledExecutorService checkpointer; // Takes background checkpoints; guarded by journalLock.
+    private volatile IOException checkpointFailure; // Last failure of a background checkpoint, if any.
+    private volatile VehicleStore store; // Mapped file holding new vehicles' records, or null if none is open.
+    private volatile VehicleStore storedFleet; // The store holding restored and stored vehicles; kept after closeStore until reset.
+    private volatile FleetColumns columns; // Records of the vehicles not held in a store.
+    private volatile InspectionQueue inspections; // Inspects returned vans on worker threads, or null.
+    private final Object journalLock; // Serialises opening, closing and checkpointing the journal, and opening and closing the store.
+    private final Object inspectionLock; // Serialises starting and stopping inspections.
+    private ScheduledExecutorService overdueChecker; // Runs checkOverdue in the background; guarded by overdue.
+    private volatile EligibilityRules rules; // Rules applied by hireVehicle when none are given.
+    private volatile MaintenanceScheduler maintenance; // Services due vehicles on request instead of on return, or null.
+    private volatile boolean verifyCounters; // When set, counters are checked against a full scan on every read.
     private static final VehicleManager INSTANCE = new VehicleManager(); // Singleton instance of VehicleManager.
 
     /**
      * Private constructor to enforce singleton pattern.
      * Initializes the lists and map for managing vehicles and customers.
      */
+    @SuppressWarnings({"unchecked", "rawtypes"}) // Generic array creation for the per-type pools.
     private VehicleManager() {
         allVehicles = new ArrayList<>();
         customers = new ArrayList<>();
-        hiredVehicles = new HashMap<>();
+        customerIndex = ConcurrentHashMap.newKeySet();
+        customersByNumber = new ConcurrentHashMap<>();
+        hiredVehicles = new ConcurrentHashMap<>();
+        vehiclesById = new ConcurrentHashMap<>();
+        hires = new ConcurrentHashMap<>();
+        dueTimes = new TimingWheel<>(OVERDUE_TICK_MILLIS, System.currentTimeMillis());
+        overdue = ConcurrentHashMap.newKeySet();
+        hireVersion = new AtomicLong();
+        writesBegun = new LongAdder();
+        writesEnded = new LongAdder();
+        snapshotGate = new Object();
+        heldCopies = new LongAdder();
+        customerLocks = new Object[CUSTOMER_STRIPES];
+        for (int i = 0; i < CUSTOMER_STRIPES; i++)
+            customerLocks[i] = new Object();
+        freePools = new Deque[VehicleType.values().length];
+        for (int i = 0; i < freePools.length; i++)
+            freePools[i] = new ArrayDeque<>();
+        available = new AtomicIntegerArray(freePools.length);
+        columns = new FleetColumns();
+        rules = EligibilityRules.defaults();
+        events = new EventLog();
+        journalLock = new Object();
+        inspectionLock = new Object();
+    }
+
+    /**
+     * Clears all vehicles, customers and hire records.
+     * Used by the tests to start each case from an empty manager.
+     */
+    private void reset() {
+        stopInspections();
+        stopOverdueChecks();
+        try {
+            closeJournal();
+            closeStore();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        synchronized (allVehicles) {
+            allVehicles.clear();
+            columns = new FleetColumns();
+            storedFleet = null;
+        }
+        synchronized (customers) {
+            customers.clear();
+            customerIndex.clear();
+            customersByNumber.clear();
+        }
+        hiredVehicles.clear();
+        vehiclesById.clear();
+        hires.clear();
+        dueTimes.clear(System.currentTimeMillis());
+        overdue.clear();
+        hireVersion.incrementAndGet();
+        hiredSnapshot = null;
+        for (int i = 0; i < freePools.length; i++) {
+            synchronized (freePools[i]) {
+                freePools[i].clear();
+            }
+            available.set(i, 0);
+        }
+        rules = EligibilityRules.defaults();
+        maintenance = null;
     }
 
     /**
@@ -45,37 +201,252 @@ public final class VehicleManager {
 
     /**
      * Returns an unmodifiable list of all vehicles in the system.
+     * The list is a copy, so it can be iterated while other threads add vehicles.
      *
      * @return A list of all vehicles.
      */
     public List<Vehicle> getAllVehicles() {
-        return Collections.unmodifiableList(allVehicles);
+        synchronized (allVehicles) {
+            return Collections.unmodifiableList(new ArrayList<>(allVehicles));
+        }
     }
 
     /**
      * Returns an unmodifiable list of all customers in the system.
+     * The list is a copy, so it can be iterated while other threads add customers.
      *
      * @return A list of all customers.
      */
     public List<CustomerRecord> getCustomers() {
-        return Collections.unmodifiableList(customers);
+        synchronized (customers) {
+            return Collections.unmodifiableList(new ArrayList<>(customers));
+        }
     }
 
     /**
      * Returns a defensive unmodifiable copy of the hiredVehicles map.
      * The returned map and its associated sets cannot be modified externally,
      * preserving encapsulation of the internal state.
+     * Each customer's set is copied under that customer's lock.
+     * <p>
+     * The copy is an immutable snapshot that is shared between callers and only
+     * rebuilt after a hire or return, so polling this method does not allocate.
      *
      * @return A map of hired vehicles.
      */
     public Map<Integer, Set<Vehicle>> getHiredVehicles() {
+        long version = hireVersion.get();
+        HireSnapshot snapshot = hiredSnapshot;
+        if (snapshot != null && snapshot.version() == version)
+            return snapshot.hired();
+        // Changes made while copying bump the version, so this snapshot is
+        // never reused for a later version than the one read above.
+        Map<Integer, Set<Vehicle>> hired = copyHiredVehicles();
+        hiredSnapshot = new HireSnapshot(version, hired);
+        return hired;
+    }
+
+    /**
+     * Copies the hiredVehicles map, copying each customer's set under that customer's lock.
+     *
+     * @return An unmodifiable copy of the map of hired vehicles.
+     */
+    private Map<Integer, Set<Vehicle>> copyHiredVehicles() {
         Map<Integer, Set<Vehicle>> copyMap = new HashMap<>();
-        for (Map.Entry<Integer, Set<Vehicle>> entry : hiredVehicles.entrySet()) {
-            copyMap.put(entry.getKey(), Collections.unmodifiableSet(entry.getValue()));
+        for (Integer customerNum : hiredVehicles.keySet()) {
+            synchronized (customerLock(customerNum)) {
+                Set<Vehicle> vehicleSet = hiredVehicles.get(customerNum);
+                if (vehicleSet != null)
+                    copyMap.put(customerNum, Collections.unmodifiableSet(new HashSet<>(vehicleSet)));
+            }
         }
         return Collections.unmodifiableMap(copyMap);
     }
 
+    /**
+     * Returns the number of vehicles currently on hire.
+     *
+     * @return The number of hired vehicles.
+     */
+    public int hiredCount() {
+        return hires.size();
+    }
+
+    /**
+     * Passes each current hire to an action, as the hiring customer and the hired vehicle,
+     * without building a map. The iteration is weakly consistent: hires and returns made
+     * while it runs may or may not be seen, but no hire is seen twice.
+     *
+     * @param action The action to run for each hire.
+     * @throws IllegalArgumentException if action is null.
+     */
+    public void forEachHire(BiConsumer<CustomerRecord, Vehicle> action) {
+        if (action == null)
+            throw new IllegalArgumentException("Action cannot be null!");
+        hires.forEach((vehicleID, hire) -> action.accept(hire.getCustomer(), hire.getVehicle()));
+    }
+
+    /**
+     * Returns an immutable view of the vehicles, customers and hires, all at one version.
+     * The state is first copied optimistically, without blocking hires and returns, and
+     * the copy is kept if no write section was active or started while it was taken.
+     * If that fails several times in a row, new write sections are held back while the
+     * ones in progress finish and the copy is taken.
+     * <p>
+     * A copy takes time in proportion to the fleet, so on a large fleet with steady hires
+     * and returns every optimistic attempt is usually spoiled. The snapshot then blocks
+     * hires, returns and every other change for the whole copy. getHeldCopyCount counts
+     * how often that happens.
+     *
+     * @return A consistent snapshot of the fleet.
+     */
+    public FleetSnapshot snapshot() {
+        return betweenWrites(this::copySnapshot);
+    }
+
+    /**
+     * Runs a copy of the fleet state between write sections, as described for snapshot(),
+     * and returns the first copy taken while no write section was active. After
+     * SNAPSHOT_ATTEMPTS spoiled copies it falls back to withWritesHeld, which blocks
+     * writers for the whole copy.
+     *
+     * @param copy Copies the state, given the fleet version being copied.
+     * @param <T>  The type of the copy.
+     * @return The consistent copy.
+     */
+    private <T> T betweenWrites(LongFunction<T> copy) {
+        for (int attempt = 0; attempt < SNAPSHOT_ATTEMPTS; attempt++) {
+            long ended = writesEnded.sum(); // Read before writesBegun, so an active write shows as begun > ended.
+            long begun = writesBegun.sum();
+            if (begun == ended) {
+                T snapshot = copy.apply(begun);
+                if (writesBegun.sum() == begun)
+                    return snapshot;
+            }
+            Thread.onSpinWait();
+        }
+        heldCopies.increment();
+        return withWritesHeld(copy);
+    }
+
+    /**
+     * Returns how many snapshots, fleet tables and checkpoints gave up on copying
+     * optimistically and held writers back for their copy, since the manager was created.
+     *
+     * @return The number of copies taken with writers held back.
+     */
+    public long getHeldCopyCount() {
+        return heldCopies.sum();
+    }
+
+    /**
+     * Holds back new write sections, waits for the ones in progress to finish and
+     * runs an action while none can start. The action may change the fleet directly,
+     * but must not begin a write section or take the allVehicles lock before another.
+     *
+     * @param action The action, given the fleet version it runs at.
+     * @param <T>    The type of the action's result.
+     * @return The action's result.
+     */
+    private <T> T withWritesHeld(LongFunction<T> action) {
+        synchronized (snapshotGate) {
+            snapshotPending = true;
+            try {
+                long begun;
+                while ((begun = writesBegun.sum()) != writesEnded.sum())
+                    LockSupport.parkNanos(1000);
+                return action.apply(begun);
+            } finally {
+                snapshotPending = false;
+            }
+        }
+    }
+
+    /**
+     * Returns the fleet as columns of primitive values, for aggregate queries such as
+     * counts and mileage totals by type. The manager keeps every vehicle's values in
+     * columns (FleetColumns, or the VehicleStore when one is used), so the table is
+     * copied from those columns between write sections, like a snapshot, without
+     * reading any Vehicle object. Like a snapshot, it may hold writers back for the copy.
+     *
+     * @return The fleet table.
+     * @see FleetSnapshot#getTable()
+     */
+    public FleetTable fleetTable() {
+        return betweenWrites(version -> {
+            VehicleStore s = storedFleet;
+            return s == null ? new FleetTable(columns) : new FleetTable(s, columns);
+        });
+    }
+
+    /**
+     * Copies the vehicles, their states, the customers and hires into a snapshot,
+     * with the LSN of the last journal record they reflect.
+     * The hire index is read without locks; the caller checks afterwards
+     * that no write ran while it was being copied.
+     *
+     * @param version The fleet version being copied.
+     * @return The snapshot.
+     */
+    private FleetSnapshot copySnapshot(long version) {
+        List<Vehicle> vehicles;
+        synchronized (allVehicles) {
+            vehicles = new ArrayList<>(allVehicles);
+        }
+        long[] states = new long[vehicles.size()];
+        for (int i = 0; i < states.length; i++)
+            states[i] = vehicles.get(i).getState();
+        List<CustomerRecord> customerList;
+        synchronized (customers) {
+            customerList = new ArrayList<>(customers);
+        }
+        Journal j = journal;
+        return new FleetSnapshot(version, vehicles, states, customerList, new HashMap<>(hires),
+                j == null ? 0 : j.lastLsn());
+    }
+
+    /**
+     * Starts a write section. Must be called before taking any lock, and paired
+     * with endWrite in a finally block. Write sections do not nest.
+     * If a snapshot is holding writers back, steps out and waits for it first.
+     */
+    private void beginWrite() {
+        writesBegun.increment();
+        while (snapshotPending) {
+            writesEnded.increment(); // Step back out so the snapshot can proceed.
+            synchronized (snapshotGate) {
+                // The snapshot holds the gate until it is done; nothing to do here.
+            }
+            writesBegun.increment();
+        }
+    }
+
+    /**
+     * Ends a write section started by beginWrite.
+     */
+    private void endWrite() {
+        writesEnded.increment();
+    }
+
+    /**
+     * HireSnapshot - An immutable copy of the hire sets, tagged with the hire version it was taken at.
+     *
+     * @param version The hire version read before the copy was taken.
+     * @param hired   The unmodifiable copy of the hire sets.
+     */
+    private record HireSnapshot(long version, Map<Integer, Set<Vehicle>> hired) {
+    }
+
+    /**
+     * Returns the lock stripe that guards a customer's hire set.
+     *
+     * @param customerNum The customer number.
+     * @return The lock object for the customer.
+     */
+    private Object customerLock(int customerNum) {
+        return customerLocks[customerNum & (CUSTOMER_STRIPES - 1)];
+    }
+
     /**
      * Adds a new vehicle to the system.
      *
@@ -84,22 +455,237 @@ public final class VehicleManager {
      * @throws IllegalArgumentException if the vehicle type is invalid.
      */
     public Vehicle addVehicle(String vehicleType) {
-        Vehicle vehicle;
         if (vehicleType == null || vehicleType.trim().isEmpty()) {
             throw new IllegalArgumentException("Vehicle type cannot be null or empty!");
         }
-        if (vehicleType.equalsIgnoreCase("Car")) {
-            vehicle = new Car();
-            allVehicles.add(vehicle);
-        } else if (vehicleType.equalsIgnoreCase("Van")) {
-            vehicle = new Van();
-            allVehicles.add(vehicle);
-        } else
+        VehicleType type = VehicleType.lookup(vehicleType);
+        if (type == null)
             throw new IllegalArgumentException("Invalid vehicle type!");
+        return addVehicle(type);
+    }
 
+    /**
+     * Adds a new vehicle of the given type to the system.
+     *
+     * @param type The type of vehicle to add.
+     * @return The newly created Vehicle object.
+     */
+    public Vehicle addVehicle(VehicleType type) {
+        Vehicle vehicle;
+        long lsn = 0;
+        beginWrite(); // The record is appended inside the section, so a fleet table never sees it half added.
+        try {
+            VehicleStore s = store;
+            vehicle = addRecordedVehicle(s == null ? columns : s, type);
+            synchronized (allVehicles) {
+                allVehicles.add(vehicle);
+                Journal j = journal;
+                if (j != null)
+                    lsn = j.logAddVehicle(vehicle.getVehicleID());
+                MaintenanceScheduler m = maintenance;
+                if (m != null)
+                    m.track(vehicle);
+            }
+            vehiclesById.put(vehicle.getVehicleID(), vehicle);
+            available.incrementAndGet(type.ordinal());
+            releaseToPool(vehicle);
+        } finally {
+            endWrite();
+        }
+        commitJournal(lsn);
         return vehicle;
     }
 
+    /**
+     * Issues an ID for a new vehicle and appends its record to the store or the fleet columns.
+     *
+     * @param records The store or the fleet columns.
+     * @param type    The type of vehicle to add.
+     * @return A view of the new record.
+     * @throws IllegalStateException if the store is full.
+     */
+    private static Vehicle addRecordedVehicle(VehicleRecords records, VehicleType type) {
+        VehicleID id = VehicleID.getInstance(type);
+        int record;
+        try {
+            record = records.allocate(id, type.getServiceDistance());
+        } catch (IllegalStateException e) {
+            VehicleID.release(id); // Never given to a vehicle.
+            throw e;
+        }
+        return recordedVehicle(records, record, type);
+    }
+
+    /**
+     * Creates the view of a vehicle's record.
+     *
+     * @param records The store or the fleet columns.
+     * @param record  The record number.
+     * @param type    The type held in the record.
+     * @return The vehicle.
+     */
+    private static Vehicle recordedVehicle(VehicleRecords records, int record, VehicleType type) {
+        return switch (type) {
+            case CAR -> new Car(records, record);
+            case VAN -> new Van(records, record);
+        };
+    }
+
+    /**
+     * Retires a vehicle for good: takes it out of its free pool, the availability count,
+     * the lookup index and the maintenance schedule, and marks its record retired so that
+     * fleet tables and a reopened store leave it out. The retirement is journaled before
+     * anything changes, and the ID is released last, so a later vehicle may be issued it.
+     * A Vehicle object for the retired vehicle that a caller still holds reads as hired.
+     *
+     * @param vehicleID The ID of the vehicle.
+     * @return True if the vehicle was retired, false if it is hired.
+     * @throws IllegalArgumentException if no vehicle has the ID.
+     * @throws UncheckedIOException     if the journal could not be written; the vehicle is left in the fleet.
+     */
+    public boolean retireVehicle(VehicleID vehicleID) {
+        long lsn = 0;
+        beginWrite();
+        try {
+            Vehicle vehicle = vehiclesById.get(vehicleID);
+            if (vehicle == null)
+                throw new IllegalArgumentException("No vehicle has the ID " + vehicleID);
+            AbstractVehicle retiring = (AbstractVehicle) vehicle;
+            long before = retiring.retire(); // Marked hired as well, so no hire can claim it from here on.
+            if (before < 0)
+                return false;
+            int t = vehicle.getType().ordinal();
+            synchronized (allVehicles) {
+                Journal j = journal;
+                if (j != null) {
+                    try {
+                        lsn = j.logRetireVehicle(vehicleID);
+                    } catch (RuntimeException e) {
+                        retiring.restoreState(before);
+                        throw e;
+                    }
+                }
+                allVehicles.remove(vehicle);
+                MaintenanceScheduler m = maintenance;
+                if (m != null)
+                    m.track(vehicle); // Drops it from the schedule.
+            }
+            Deque<Vehicle> pool = freePools[t];
+            synchronized (pool) {
+                pool.remove(vehicle);
+            }
+            available.decrementAndGet(t);
+            vehiclesById.remove(vehicleID);
+            VehicleID.release(vehicleID);
+        } finally {
+            endWrite();
+        }
+        commitJournal(lsn);
+        return true;
+    }
+
+    /**
+     * Looks up a vehicle by its ID.
+     *
+     * @param vehicleID The ID of the vehicle.
+     * @return The vehicle, or null if no vehicle in the system has that ID.
+     */
+    public Vehicle getVehicle(VehicleID vehicleID) {
+        return vehiclesById.get(vehicleID);
+    }
+
+    /**
+     * Returns the customer currently hiring a vehicle.
+     *
+     * @param vehicleID The ID of the vehicle.
+     * @return The hiring customer, or null if the vehicle is not hired.
+     */
+    public CustomerRecord getHirer(VehicleID vehicleID) {
+        HireRecord hire = hires.get(vehicleID);
+        return hire == null ? null : hire.getCustomer();
+    }
+
+    /**
+     * Returns the current hire of a vehicle, with its start and due times.
+     *
+     * @param vehicleID The ID of the vehicle.
+     * @return The hire record, or null if the vehicle is not hired.
+     */
+    public HireRecord getHireRecord(VehicleID vehicleID) {
+        return hires.get(vehicleID);
+    }
+
+    /**
+     * Flags every hire whose due time has passed by a given time and that has not
+     * been flagged yet, and publishes an OVERDUE event for each. The due times are
+     * kept in a hierarchical timing wheel, so the cost is constant per one-second
+     * tick plus the hires that fall due, however many hires are out. Hires and
+     * returns made while a check runs do not wait for it; they are applied by the next check.
+     * Normally called by startOverdueChecks with the current time.
+     *
+     * @param nowMillis The time to check at, in milliseconds since the epoch.
+     * @return The number of hires newly flagged as overdue.
+     */
+    public int checkOverdue(long nowMillis) {
+        int[] flagged = new int[1];
+        dueTimes.advance(nowMillis, hire -> {
+            VehicleID id = hire.getVehicle().getVehicleID();
+            if (hires.get(id) != hire)
+                return; // Returned while its timer was expiring.
+            hire.markOverdue();
+            overdue.add(hire);
+            flagged[0]++;
+            publish(FleetEvent.Kind.OVERDUE, hire.getCustomer().getCustomerNum(), id, hire.getVehicle().getType(),
+                    null, (int) TimeUnit.MILLISECONDS.toDays(hire.getDueMillis() - hire.getStartMillis()));
+        });
+        return flagged[0];
+    }
+
+    /**
+     * Returns the hires flagged as overdue that are still out, earliest due first.
+     *
+     * @return A list of overdue hires.
+     */
+    public List<HireRecord> getOverdueHires() {
+        List<HireRecord> list = new ArrayList<>(overdue);
+        list.sort(Comparator.comparingLong(HireRecord::getDueMillis));
+        return list;
+    }
+
+    /**
+     * Starts calling checkOverdue with the current time in the background at a fixed period,
+     * replacing any earlier schedule.
+     *
+     * @param period The time between checks.
+     * @param unit   The unit of period.
+     * @throws IllegalArgumentException if period is not positive.
+     */
+    public void startOverdueChecks(long period, TimeUnit unit) {
+        if (period <= 0)
+            throw new IllegalArgumentException("Overdue check period must be positive.");
+        synchronized (overdue) {
+            stopOverdueChecks();
+            overdueChecker = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "hire-overdue");
+                t.setDaemon(true);
+                return t;
+            });
+            overdueChecker.scheduleAtFixedRate(() -> checkOverdue(System.currentTimeMillis()), period, period, unit);
+        }
+    }
+
+    /**
+     * Stops background overdue checks, if they are running.
+     */
+    public void stopOverdueChecks() {
+        synchronized (overdue) {
+            if (overdueChecker != null) {
+                overdueChecker.shutdown();
+                overdueChecker = null;
+            }
+        }
+    }
+
     /**
      * Returns the number of vehicles of the specified type (a car or a van) that are Not hired
      *
@@ -107,14 +693,52 @@ public final class VehicleManager {
      * @return The number of available vehicles of the specified type.
      */
     public int noOfAvailableVehicles(String vehicleType) {
+        VehicleType type = VehicleType.lookup(vehicleType);
+        return type == null ? 0 : noOfAvailableVehicles(type);
+    }
+
+    /**
+     * Returns the number of vehicles of the specified type that are not hired.
+     *
+     * @param type The type of vehicle.
+     * @return The number of available vehicles of the specified type.
+     */
+    public int noOfAvailableVehicles(VehicleType type) {
+        int count = available.get(type.ordinal());
+        if (verifyCounters && count != countAvailableByScan(type))
+            throw new IllegalStateException("Available " + type.getName() + " counter is out of step with the fleet.");
+        return count;
+    }
+
+    /**
+     * Counts the vehicles of the given type that are not hired by scanning the whole fleet.
+     * Used to verify the live counters, so it is only exact while no hires or returns are in progress.
+     *
+     * @param type The type of vehicle.
+     * @return The number of vehicles of the type that are not hired.
+     */
+    private int countAvailableByScan(VehicleType type) {
         int count = 0;
-        for (Vehicle v : allVehicles) {
-            if (vehicleType.equalsIgnoreCase(v.getVehicleType()) && !v.isHired())
-                count++;
+        synchronized (allVehicles) {
+            for (Vehicle v : allVehicles) {
+                if (v.getType() == type && !v.isHired())
+                    count++;
+            }
         }
         return count;
     }
 
+    /**
+     * Turns counter verification on or off.
+     * When on, noOfAvailableVehicles compares its counter with a full scan
+     * and throws IllegalStateException if they differ. Intended for tests.
+     *
+     * @param flag True to verify counters on every read, false otherwise.
+     */
+    public void setCounterVerification(boolean flag) {
+        verifyCounters = flag;
+    }
+
     /**
      * Adds a new customer record to the system.
      * Ensures that the combination of first name, last name, and date of birth is unique.
@@ -128,12 +752,35 @@ public final class VehicleManager {
      */
     public CustomerRecord addCustomerRecord(String firstName, String lastName, Date dob, Boolean hasCommercialLicense) {
         CustomerRecord customer = CustomerRecord.getInstance(firstName, lastName, dob, hasCommercialLicense);
-        if (customers.contains(customer))
-            throw new IllegalArgumentException("Duplicate customer!");
-        customers.add(customer);
+        long lsn = 0;
+        beginWrite();
+        try {
+            synchronized (customers) {
+                if (!customerIndex.add(customer))
+                    throw new IllegalArgumentException("Duplicate customer!");
+                customersByNumber.put(customer.getCustomerNum(), customer);
+                customers.add(customer);
+                Journal j = journal;
+                if (j != null)
+                    lsn = j.logAddCustomer(customer, true);
+            }
+        } finally {
+            endWrite();
+        }
+        commitJournal(lsn);
         return customer;
     }
 
+    /**
+     * Looks up a customer by customer number.
+     *
+     * @param customerNum The customer number.
+     * @return The customer, or null if no customer in the system has that number.
+     */
+    public CustomerRecord getCustomerByNumber(int customerNum) {
+        return customersByNumber.get(customerNum);
+    }
+
     /**
      * Checks if the given vehicle type is a car.
      *
@@ -141,7 +788,7 @@ public final class VehicleManager {
      * @return True if the type is "Car", false otherwise.
      */
     public boolean isCar(String type) {
-        return type.equalsIgnoreCase("Car");
+        return VehicleType.CAR.getName().equalsIgnoreCase(type);
     }
 
     /**
@@ -151,112 +798,1319 @@ public final class VehicleManager {
      * @return True if the type is "Van", false otherwise.
      */
     public boolean isVan(String type) {
-        return type.equalsIgnoreCase("Van");
+        return VehicleType.VAN.getName().equalsIgnoreCase(type);
     }
 
     /**
-     * Attempts to hire a vehicle for a customer.
-     * Checks customer eligibility and vehicle availability.
+     * Claims the first hireable vehicle in a free pool.
+     * The claim itself is the atomic tryClaim on the vehicle; the pool lock
+     * only guards the deque.
+     * Entries made unhireable by direct changes to a vehicle are dropped here;
+     * they rejoin a pool when the vehicle is next returned.
      *
-     * @param customerRecord The customer requesting the hire.
-     * @param vehicleType    The type of vehicle to hire ("Car" or "Van").
-     * @param duration       The duration of the hire in days.
-     * @return True if the hire was successful, false otherwise.
+     * @param pool The free pool to claim from.
+     * @return The claimed vehicle, or null if none is available.
      */
-    public boolean hireVehicle(CustomerRecord customerRecord, String vehicleType, int duration) {
-        int customerNum = customerRecord.getCustomerNum();
-        hiredVehicles.putIfAbsent(customerNum, new HashSet<>()); // Initialize rental record if absent.
-        Set<Vehicle> vehicleSet = hiredVehicles.get(customerNum);
-
-        // Check if the customer has reached the rental limit.
-        if (vehicleSet.size() >= 3) {
-            System.out.println("The number of vehicle rentals exceeds the limit of 3.");
-            return false;
+    private Vehicle claimFromPool(Deque<Vehicle> pool) {
+        synchronized (pool) {
+            Vehicle v;
+            while ((v = pool.pollFirst()) != null) {
+                if (v.tryClaim())
+                    return v;
+            }
         }
+        return null;
+    }
 
-        // Check age and license requirements for the vehicle type.
-        if (isCar(vehicleType) && customerRecord.getAge() < 18) {
-            System.out.println("Hire failed: Customer must be at least 18 to hire a car.");
-            return false;
-        }
-        if (isVan(vehicleType) && (customerRecord.getAge() < 23 || (!customerRecord.hasCommercialLicense()))) {
-            System.out.println("Hire failed: Customer must be at least 23 and have a commercial license to hire a van.");
-            return false;
+    /**
+     * Claims up to a given number of hireable vehicles from a free pool
+     * in one pass under the pool lock.
+     *
+     * @param pool The free pool to claim from.
+     * @param max  The most vehicles to claim.
+     * @return The claimed vehicles, in pool order; fewer than max if the pool ran out.
+     */
+    private Deque<Vehicle> claimFromPool(Deque<Vehicle> pool, int max) {
+        Deque<Vehicle> claimed = new ArrayDeque<>(max);
+        if (max == 0)
+            return claimed;
+        synchronized (pool) {
+            Vehicle v;
+            while (claimed.size() < max && (v = pool.pollFirst()) != null) {
+                if (v.tryClaim())
+                    claimed.addLast(v);
+            }
         }
+        return claimed;
+    }
 
-        // Find an available vehicle that meets the criteria.
-        for (Vehicle v : allVehicles) {
-            if (!v.getVehicleType().equalsIgnoreCase(vehicleType)) // Skip mismatched types.
-                continue;
-            if (v.isHired() || v.getCurrentMileage() >= v.getDistanceRequirement()) // Skip unavailable vehicles.
-                continue;
-            if (v instanceof Van van && van.needCheck()) // Skip vans requiring check.
-                continue;
+    /**
+     * Puts vehicles of one type back into their free pool, under one acquisition
+     * of the pool lock. Vehicles that cannot be hired are left out.
+     *
+     * @param pool     The free pool for the vehicles' type.
+     * @param vehicles The vehicles to release.
+     */
+    private void releaseToPool(Deque<Vehicle> pool, Collection<Vehicle> vehicles) {
+        synchronized (pool) {
+            for (Vehicle v : vehicles)
+                if (isHireable(v))
+                    pool.addLast(v);
+        }
+    }
 
-            // Assign the vehicle to the customer.
-            v.setHired(true);
-            if (v instanceof Van van && duration >= 10) // Mark vans for inspection if hired for 10+ days.
-                van.setCheck(true);
-            vehicleSet.add(v);
-            System.out.println("Hire successful: Vehicle " + v.getVehicleID() + " rented to " + customerRecord.getName());
-            return true;
+    /**
+     * Puts a vehicle back into the free pool for its type if it can be hired.
+     *
+     * @param v The vehicle to release.
+     */
+    private void releaseToPool(Vehicle v) {
+        Deque<Vehicle> pool = freePools[v.getType().ordinal()];
+        synchronized (pool) {
+            if (isHireable(v))
+                pool.addLast(v);
         }
+    }
 
-        System.out.println("Hire failed: No available " + vehicleType + " found at the moment.");
-        return false; // No suitable vehicle found.
+    /**
+     * Checks whether a vehicle can be handed out to a customer.
+     *
+     * @param v The vehicle to check.
+     * @return True if the vehicle is not hired, not due a service and not awaiting a check.
+     */
+    private static boolean isHireable(Vehicle v) {
+        return VehicleState.isHireable(v.getState(), v.getDistanceRequirement());
     }
 
     /**
-     * Returns a vehicle and updates its status.
-     * Removes the vehicle from the customer's hired list, updates mileage, and performs maintenance if needed.
+     * Opens a write-ahead journal, forcing it to disk every 100 ms under SyncPolicy.INTERVAL.
      *
-     * @param vehicleID      The ID of the vehicle being returned.
-     * @param customerRecord The customer returning the vehicle.
-     * @param mileage        The mileage driven during the hire.
+     * @param dir    The directory for the journal segments and checkpoints.
+     * @param policy When the journal is forced to disk.
+     * @return What was restored and how long it took.
+     * @throws IOException if the journal cannot be opened or read.
+     * @see #openJournal(Path, Journal.SyncPolicy, long, TimeUnit)
+     */
+    public RecoveryStats openJournal(Path dir, Journal.SyncPolicy policy) throws IOException {
+        return openJournal(dir, policy, 100, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Opens a write-ahead journal and restores the state it records: loads the newest
+     * checkpoint, replays the journal records after it to rebuild the vehicles, customers
+     * and hires, including the VehicleID and CustomerRecord registries, then appends
+     * every later change to the journal.
+     * Must be called at startup, before any vehicle or customer is added.
+     * <p>
+     * A change is journaled before it is made, and then waits for its own records to
+     * be committed under the sync policy. If the journal cannot be written at that
+     * point, the method making the change throws UncheckedIOException although the
+     * change has been made in memory. The journal then refuses every later change,
+     * and after a restart the change is present only if its records reached the
+     * file before the failure, so the manager should be reopened from the journal.
+     *
+     * @param dir          The directory for the journal segments and checkpoints; created if it does not exist.
+     * @param policy       When the journal is forced to disk.
+     * @param syncInterval The longest time between forces under SyncPolicy.INTERVAL.
+     * @param unit         The unit of syncInterval.
+     * @return What was restored and how long it took.
+     * @throws IOException           if the journal cannot be opened or read.
+     * @throws IllegalStateException if a journal is already open or the manager is not empty.
      */
-    public void returnVehicle(VehicleID vehicleID, CustomerRecord customerRecord, int mileage) {
-        Set<Vehicle> vehicleSet = hiredVehicles.get(customerRecord.getCustomerNum());
-        if (vehicleSet == null) return; // No vehicles hired by the customer.
-
-        Vehicle target = null;
-        Iterator<Vehicle> it = vehicleSet.iterator();
-        while (it.hasNext()) {
-            Vehicle v = it.next();
-            if (v.getVehicleID().equals(vehicleID)) { // Find the target vehicle.
-                it.remove(); // Remove the vehicle from the customer's hired list.
-                target = v;
-                break;
+    public RecoveryStats openJournal(Path dir, Journal.SyncPolicy policy, long syncInterval, TimeUnit unit) throws IOException {
+        synchronized (journalLock) {
+            if (journal != null)
+                throw new IllegalStateException("A journal is already open.");
+            if (store != null)
+                throw new IllegalStateException("A vehicle store is open; it cannot be used with a journal.");
+            synchronized (allVehicles) {
+                synchronized (customers) {
+                    if (!allVehicles.isEmpty() || !customers.isEmpty())
+                        throw new IllegalStateException("Journal must be opened before vehicles or customers are added.");
+                }
             }
+            long start = System.nanoTime();
+            JournalReplayer replayer = new JournalReplayer();
+            long checkpointLsn;
+            Journal opened;
+            try {
+                checkpointLsn = Checkpoint.loadLatest(dir, replayer);
+                opened = new Journal(dir, policy, syncInterval, unit, checkpointLsn, replayer);
+            } catch (IOException | RuntimeException e) {
+                reset(); // Discard a partial restore.
+                throw e;
+            }
+            replayer.finish();
+            journal = opened;
+            journalDir = dir;
+            return new RecoveryStats(checkpointLsn, allVehicles.size(), customers.size(),
+                    opened.lastLsn() - checkpointLsn, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Writes out and closes the journal, if one is open, and stops background
+     * checkpoints. Later changes are not journaled.
+     *
+     * @throws IOException if the journal cannot be written or closed.
+     */
+    public void closeJournal() throws IOException {
+        synchronized (journalLock) {
+            stopCheckpoints();
+            Journal j = journal;
+            journal = null;
+            journalDir = null;
+            if (j != null)
+                j.close();
         }
+    }
 
-        if (target == null) return; // Vehicle not found.
+    /**
+     * Writes a checkpoint of the whole fleet and deletes the journal segments and
+     * older checkpoints it makes redundant.
+     * The journal is rolled to a new segment first, so every record in the older
+     * segments is covered by the checkpoint. The state is copied with snapshot(), so
+     * under steady hires and returns the copy may block them, as described there.
+     * Hires and returns carry on while the checkpoint is written.
+     *
+     * @return The journal LSN the checkpoint was taken at.
+     * @throws IOException           if the checkpoint cannot be written.
+     * @throws IllegalStateException if no journal is open.
+     */
+    public long checkpoint() throws IOException {
+        synchronized (journalLock) {
+            Journal j = journal;
+            if (j == null)
+                throw new IllegalStateException("No journal is open.");
+            j.roll();
+            FleetSnapshot snapshot = snapshot();
+            long lsn = snapshot.getJournalLsn();
+            Checkpoint.write(journalDir, snapshot);
+            Checkpoint.deleteOlderThan(journalDir, lsn);
+            j.deleteSegmentsThrough(lsn);
+            return lsn;
+        }
+    }
 
-        // Remove the customer from the map if no vehicles are left.
-        if (vehicleSet.isEmpty())
-            hiredVehicles.remove(customerRecord.getCustomerNum());
+    /**
+     * Starts taking a checkpoint in the background at a fixed period, replacing any
+     * earlier schedule. A failed checkpoint is kept for getCheckpointFailure and
+     * retried at the next period.
+     *
+     * @param period The time between checkpoints.
+     * @param unit   The unit of period.
+     * @throws IllegalStateException    if no journal is open.
+     * @throws IllegalArgumentException if period is not positive.
+     */
+    public void startCheckpoints(long period, TimeUnit unit) {
+        if (period <= 0)
+            throw new IllegalArgumentException("Checkpoint period must be positive.");
+        synchronized (journalLock) {
+            if (journal == null)
+                throw new IllegalStateException("No journal is open.");
+            stopCheckpoints();
+            checkpointer = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "fleet-checkpoint");
+                t.setDaemon(true);
+                return t;
+            });
+            checkpointer.scheduleWithFixedDelay(() -> {
+                try {
+                    checkpoint();
+                    checkpointFailure = null;
+                } catch (IOException e) {
+                    checkpointFailure = e;
+                } catch (IllegalStateException e) {
+                    // The journal was closed; stopCheckpoints is cancelling this task.
+                }
+            }, period, period, unit);
+        }
+    }
 
-        // Update the vehicle's status and perform maintenance if required.
-        target.setHired(false);
-        target.setCurrentMileage(mileage + target.getCurrentMileage());
-        if (target.performServiceIfDue())
-            System.out.println("The vehicle has been serviced.");
-        if (target instanceof Van van && van.needCheck()) {
-            van.setCheck(false);
-            System.out.println("The van has been checked.");
+    /**
+     * Stops background checkpoints, if they are running. A checkpoint in progress completes.
+     */
+    public void stopCheckpoints() {
+        synchronized (journalLock) {
+            if (checkpointer != null) {
+                checkpointer.shutdown();
+                checkpointer = null;
+            }
         }
     }
 
     /**
-     * Returns a collection of vehicles currently hired by a specific customer.
+     * Returns the failure of the last background checkpoint.
      *
-     * @param customerRecord The customer whose hired vehicles are requested.
-     * @return An unmodifiable collection of vehicles hired by the customer.
-     * or an empty collection if none exist
+     * @return The exception, or null if the last background checkpoint succeeded or none has run.
      */
-    public Collection<Vehicle> getVechilesByCustomer(CustomerRecord customerRecord) {
-        Set<Vehicle> vehicleSet = hiredVehicles.get(customerRecord.getCustomerNum());
-        if (vehicleSet == null)
-            return Collections.emptySet();
-        return Collections.unmodifiableSet(vehicleSet);
+    public IOException getCheckpointFailure() {
+        return checkpointFailure;
+    }
+
+    /**
+     * Opens a memory-mapped vehicle store and restores the vehicles recorded in it.
+     * Vehicles added while the store is open are kept in it. Only vehicles are
+     * stored, not customers or hires, so a vehicle that was hired when the store was
+     * last used is restored as returned, with any van inspection cleared. Records of
+     * retired vehicles are skipped, and their IDs stay free.
+     * Must be called at startup, before any vehicle or customer is added.
+     *
+     * @param file     The store file; created if it does not exist.
+     * @param capacity The number of vehicles a new store can hold. An existing store keeps its capacity.
+     * @return The number of vehicles restored.
+     * @throws IOException              if the store cannot be opened or is damaged.
+     * @throws IllegalStateException    if a store or journal is open, or the manager is not empty.
+     * @throws IllegalArgumentException if capacity is not positive.
+     */
+    public int openStore(Path file, int capacity) throws IOException {
+        synchronized (journalLock) {
+            if (store != null)
+                throw new IllegalStateException("A vehicle store is already open.");
+            if (journal != null)
+                throw new IllegalStateException("A journal is open; it cannot be used with a vehicle store.");
+            synchronized (allVehicles) {
+                synchronized (customers) {
+                    if (!allVehicles.isEmpty() || !customers.isEmpty())
+                        throw new IllegalStateException("Vehicle store must be opened before vehicles or customers are added.");
+                }
+            }
+            VehicleStore opened = VehicleStore.open(file, capacity);
+            int count = 0;
+            // Runs before the manager is used, so like journal replay it takes no locks.
+            for (int r = 0; r < opened.size(); r++) {
+                if (VehicleState.isRetired(opened.state(r)))
+                    continue;
+                VehicleID id;
+                try {
+                    id = opened.idAt(r);
+                } catch (IllegalArgumentException e) {
+                    reset();
+                    opened.close();
+                    throw new IOException("Vehicle store record " + r + " is damaged: " + file, e);
+                }
+                VehicleID.restore(id);
+                Vehicle vehicle = recordedVehicle(opened, r, id.getType());
+                // The hire itself was not stored, so the vehicle is restored as returned.
+                if (vehicle.release() && vehicle instanceof Van van)
+                    van.setCheck(false);
+                allVehicles.add(vehicle);
+                vehiclesById.put(id, vehicle);
+                count++;
+            }
+            rebuildPools();
+            store = opened;
+            storedFleet = opened;
+            return count;
+        }
+    }
+
+    /**
+     * Forces the vehicle store to disk and closes it, if one is open.
+     * Vehicles added later are kept on the heap.
+     *
+     * @throws IOException if the store cannot be closed.
+     */
+    public void closeStore() throws IOException {
+        synchronized (journalLock) {
+            VehicleStore s = store;
+            store = null;
+            if (s != null)
+                s.close();
+        }
+    }
+
+    /**
+     * Returns the open vehicle store, for example to force it to disk.
+     *
+     * @return The store, or null if none is open.
+     */
+    public VehicleStore getVehicleStore() {
+        return store;
+    }
+
+    /**
+     * Waits until the records of one change are durable under the journal's sync policy.
+     * Called after the change's locks are released, so a group commit never holds up
+     * other hires and returns, and with the LSN of the change's own last record, so it
+     * never waits for records other threads appended later.
+     * The change has already been made when this is called. If the journal fails first,
+     * this throws although the change stays in effect; see openJournal.
+     *
+     * @param lsn The LSN of the change's last record, or 0 if it journaled nothing.
+     * @throws UncheckedIOException if the journal could not be written.
+     */
+    private void commitJournal(long lsn) {
+        Journal j = journal;
+        if (j != null && lsn > 0)
+            j.commit(lsn);
+    }
+
+    /**
+     * JournalReplayer - Applies a checkpoint and then journal records directly to the
+     * manager's state. Runs on the opening thread before the manager is used, so it
+     * takes no locks; free pools and counters are rebuilt once at the end.
+     */
+    private final class JournalReplayer implements Journal.Replayer, Checkpoint.Loader {
+        private final Map<Integer, CustomerRecord> known = new HashMap<>(); // Every customer seen, added or not.
+
+        @Override
+        public void vehicle(VehicleID id, long state) {
+            addVehicle(id);
+            ((AbstractVehicle) vehiclesById.get(id)).restoreState(state);
+        }
+
+        @Override
+        public void customer(int customerNum, String firstName, String lastName, long birthMillis,
+                             boolean hasCommercialLicense, boolean registered) {
+            addCustomer(customerNum, firstName, lastName, birthMillis, hasCommercialLicense, registered);
+        }
+
+        @Override
+        public void hire(int customerNum, VehicleID id, long startMillis, long dueMillis) {
+            CustomerRecord customer = known.get(customerNum);
+            if (customer == null)
+                throw new IllegalStateException("Checkpoint hire of " + id + " by unknown customer " + customerNum);
+            Vehicle v = vehicle(id);
+            hiredVehicles.computeIfAbsent(customerNum, k -> new HashSet<>()).add(v);
+            addHire(new HireRecord(customer, v, startMillis, dueMillis));
+        }
+
+        @Override
+        public void addVehicle(VehicleID id) {
+            VehicleID.restore(id);
+            FleetColumns c = columns;
+            Vehicle vehicle = recordedVehicle(c, c.allocate(id, id.getType().getServiceDistance()), id.getType());
+            allVehicles.add(vehicle);
+            vehiclesById.put(id, vehicle);
+        }
+
+        @Override
+        public void addCustomer(int customerNum, String firstName, String lastName, long birthMillis,
+                                boolean hasCommercialLicense, boolean registered) {
+            CustomerRecord customer = CustomerRecord.restore(firstName, lastName, new Date(birthMillis),
+                    hasCommercialLicense, customerNum);
+            known.put(customerNum, customer);
+            if (registered && customerIndex.add(customer)) {
+                customersByNumber.put(customerNum, customer);
+                customers.add(customer);
+            }
+        }
+
+        @Override
+        public void hire(int customerNum, VehicleID id, int duration, boolean check, long startMillis, long dueMillis) {
+            Vehicle v = vehicle(id);
+            CustomerRecord customer = known.get(customerNum);
+            if (customer == null || !v.tryClaim())
+                throw new IllegalStateException("Journal hire of " + id + " by customer " + customerNum + " cannot be applied.");
+            if (check && v instanceof Van van)
+                van.setCheck(true);
+            hiredVehicles.computeIfAbsent(customerNum, k -> new HashSet<>()).add(v);
+            addHire(new HireRecord(customer, v, startMillis, dueMillis));
+        }
+
+        @Override
+        public void returned(int customerNum, VehicleID id, int mileage) {
+            Vehicle v = vehicle(id);
+            Set<Vehicle> vehicleSet = hiredVehicles.get(customerNum);
+            if (vehicleSet == null || !vehicleSet.remove(v))
+                throw new IllegalStateException("Journal return of " + id + " by customer " + customerNum + " cannot be applied.");
+            if (vehicleSet.isEmpty())
+                hiredVehicles.remove(customerNum);
+            removeHire(id);
+            v.setCurrentMileage(mileage + v.getCurrentMileage());
+            v.release();
+        }
+
+        @Override
+        public void service(VehicleID id) {
+            vehicle(id).performServiceIfDue();
+        }
+
+        @Override
+        public void vanCheck(VehicleID id) {
+            if (vehicle(id) instanceof Van van)
+                van.setCheck(false);
+        }
+
+        @Override
+        public void retireVehicle(VehicleID id) {
+            Vehicle v = vehicle(id);
+            if (((AbstractVehicle) v).retire() < 0)
+                throw new IllegalStateException("Journal retires hired vehicle " + id);
+            allVehicles.remove(v);
+            vehiclesById.remove(id);
+            VehicleID.release(id);
+        }
+
+        /**
+         * Looks up a replayed vehicle.
+         *
+         * @param id The vehicle ID.
+         * @return The vehicle.
+         * @throws IllegalStateException if the journal did not add the vehicle.
+         */
+        private Vehicle vehicle(VehicleID id) {
+            Vehicle v = vehiclesById.get(id);
+            if (v == null)
+                throw new IllegalStateException("Journal refers to unknown vehicle " + id);
+            return v;
+        }
+
+        /**
+         * Rebuilds the free pools and availability counters from the replayed vehicles.
+         */
+        void finish() {
+            rebuildPools();
+        }
+    }
+
+    /**
+     * Rebuilds the free pools and availability counters from allVehicles after a
+     * restore. Takes no locks; only called before the manager is used.
+     */
+    private void rebuildPools() {
+        int[] notHired = new int[freePools.length];
+        for (Vehicle v : allVehicles) {
+            int t = v.getType().ordinal();
+            if (!v.isHired())
+                notHired[t]++;
+            if (isHireable(v))
+                freePools[t].addLast(v);
+        }
+        for (int t = 0; t < freePools.length; t++)
+            available.set(t, notHired[t]);
+        hireVersion.incrementAndGet();
+    }
+
+    /**
+     * Returns the log that hire, return, service and van check events are published to.
+     * Add a consumer, such as a ConsoleEventSink, to receive them.
+     *
+     * @return The event log.
+     */
+    public EventLog getEventLog() {
+        return events;
+    }
+
+    /**
+     * Publishes an event to the event log. No event is built while the log has
+     * no consumers, so calls on the hire path do not allocate in that case.
+     *
+     * @param kind        What happened.
+     * @param customerNum The customer involved, or 0 if none.
+     * @param vehicleID   The vehicle involved, or null.
+     * @param type        The vehicle type involved.
+     * @param status      The hire outcome, or null for other kinds.
+     * @param value       The hire duration or the mileage driven.
+     */
+    private void publish(FleetEvent.Kind kind, int customerNum, VehicleID vehicleID,
+                         VehicleType type, HireStatus status, int value) {
+        if (!events.hasConsumers())
+            return;
+        events.publish(new FleetEvent(kind, System.currentTimeMillis(), customerNum, vehicleID, type, status, value));
+    }
+
+    /**
+     * Turns scheduled maintenance on or off.
+     * While it is on, returns no longer service vehicles. A vehicle that is due a
+     * service when it is returned stays out of the free pools, and a
+     * MaintenanceScheduler keeps every vehicle ordered by the distance left before
+     * its service. Due vehicles are listed by nextDueForService and put back into
+     * service with recordService.
+     * Vehicles whose mileage is changed directly, rather than by a return, are
+     * rescheduled when they are next returned or serviced.
+     * Turning it off services every vehicle that is waiting for a service and
+     * makes it available again, as its return would have done.
+     *
+     * @param enabled True to schedule maintenance, false to service on return again.
+     */
+    public void setScheduledMaintenance(boolean enabled) {
+        synchronized (allVehicles) {
+            if (enabled) {
+                if (maintenance == null) {
+                    MaintenanceScheduler m = new MaintenanceScheduler();
+                    for (Vehicle v : allVehicles)
+                        m.track(v);
+                    maintenance = m;
+                }
+                return;
+            }
+            if (maintenance == null)
+                return;
+            maintenance = null;
+        }
+        // Returns that saw the schedule may still be running, so service once they are done.
+        long[] lsn = new long[1];
+        List<Vehicle> serviced = withWritesHeld(version -> {
+            List<Vehicle> done = new ArrayList<>();
+            Journal j = journal;
+            for (Vehicle v : getAllVehicles()) {
+                if (!v.isHired() && v.performServiceIfDue()) {
+                    if (j != null)
+                        lsn[0] = j.logService(v.getVehicleID());
+                    releaseToPool(v);
+                    done.add(v);
+                }
+            }
+            return done;
+        });
+        for (Vehicle v : serviced)
+            publish(FleetEvent.Kind.SERVICE, 0, v.getVehicleID(), v.getType(), null, 0);
+        commitJournal(lsn[0]);
+    }
+
+    /**
+     * Returns the maintenance schedule.
+     *
+     * @return The scheduler, or null if scheduled maintenance is off.
+     */
+    public MaintenanceScheduler getMaintenanceScheduler() {
+        return maintenance;
+    }
+
+    /**
+     * Returns the vehicles that are due a service, most overdue first.
+     *
+     * @param n The most vehicles to return.
+     * @return Up to n due vehicles.
+     * @throws IllegalStateException    if scheduled maintenance is off.
+     * @throws IllegalArgumentException if n is negative.
+     */
+    public List<Vehicle> nextDueForService(int n) {
+        MaintenanceScheduler m = maintenance;
+        if (m == null)
+            throw new IllegalStateException("Scheduled maintenance is not enabled.");
+        return m.nextDue(n);
+    }
+
+    /**
+     * Records that a vehicle which is due a service has been serviced: resets its
+     * mileage, reschedules it and makes it available for hire again.
+     *
+     * @param vehicleID The ID of the vehicle.
+     * @return True if the vehicle was serviced, false if it is hired or not due a service.
+     * @throws IllegalArgumentException if no vehicle has the ID.
+     */
+    public boolean recordService(VehicleID vehicleID) {
+        Vehicle target = vehiclesById.get(vehicleID);
+        if (target == null)
+            throw new IllegalArgumentException("Unknown vehicle: " + vehicleID);
+        boolean serviced;
+        long lsn = 0;
+        beginWrite();
+        try {
+            // A vehicle that is due cannot be claimed, so only one service can win it.
+            serviced = !target.isHired() && target.performServiceIfDue();
+            MaintenanceScheduler m = maintenance;
+            if (m != null)
+                m.track(target);
+            if (serviced) {
+                Journal j = journal;
+                if (j != null)
+                    lsn = j.logService(vehicleID);
+                releaseToPool(target);
+            }
+        } finally {
+            endWrite();
+        }
+        if (serviced) {
+            publish(FleetEvent.Kind.SERVICE, 0, vehicleID, target.getType(), null, 0);
+            commitJournal(lsn);
+        }
+        return serviced;
+    }
+
+    /**
+     * Starts inspecting returned vans on daemon worker threads.
+     *
+     * @param workers   The number of inspectors working at once.
+     * @param inspector Carries out each inspection.
+     * @return The inspection queue, for its statistics.
+     * @see #startInspections(int, ThreadFactory, InspectionQueue.Inspector)
+     */
+    public InspectionQueue startInspections(int workers, InspectionQueue.Inspector inspector) {
+        AtomicInteger n = new AtomicInteger();
+        return startInspections(workers, r -> {
+            Thread t = new Thread(r, "van-inspection-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }, inspector);
+    }
+
+    /**
+     * Starts inspecting returned vans on worker threads.
+     * While inspections run, a returned van that needs an inspection is not cleared on
+     * return: it stays out of the free pool and joins an InspectionQueue, and once an
+     * inspector has passed it, its flag is cleared and it can be hired again.
+     * Vans that are already flagged and not hired, such as ones restored from the
+     * journal, are queued straight away.
+     *
+     * @param workers   The number of inspectors working at once.
+     * @param threads   Makes the worker threads; may make virtual threads where the Java release has them.
+     * @param inspector Carries out each inspection.
+     * @return The inspection queue, for its statistics.
+     * @throws IllegalStateException    if inspections are already running.
+     * @throws IllegalArgumentException if workers is not positive or an argument is null.
+     */
+    public InspectionQueue startInspections(int workers, ThreadFactory threads, InspectionQueue.Inspector inspector) {
+        synchronized (inspectionLock) {
+            if (inspections != null)
+                throw new IllegalStateException("Inspections are already running.");
+            InspectionQueue q = new InspectionQueue(workers, threads, inspector, this::completeInspection);
+            inspections = q;
+            for (Vehicle v : getAllVehicles())
+                queueInspection(v);
+            return q;
+        }
+    }
+
+    /**
+     * Stops the inspection workers. Vans still waiting are cleared without an
+     * inspection, as a return does when inspections are not running.
+     *
+     * @return The number of vans cleared without an inspection.
+     */
+    public int stopInspections() {
+        InspectionQueue q;
+        synchronized (inspectionLock) {
+            q = inspections;
+            if (q == null)
+                return 0;
+            inspections = null;
+        }
+        int cleared = 0;
+        for (Van van : q.close())
+            if (completeInspection(van))
+                cleared++;
+        return cleared;
+    }
+
+    /**
+     * Returns the running inspection queue.
+     *
+     * @return The queue, or null if inspections are not running.
+     */
+    public InspectionQueue getInspectionQueue() {
+        return inspections;
+    }
+
+    /**
+     * Hands a returned vehicle to the inspectors if it is a van that needs an inspection.
+     * Called after the vehicle is back in the free pools, which leave it out while it is
+     * flagged. If inspections have stopped since the return, the van is cleared here,
+     * in a write section of its own, so the caller must not be in one.
+     *
+     * @param v The returned vehicle.
+     */
+    private void queueInspection(Vehicle v) {
+        if (v instanceof Van van && van.needCheck() && !van.isHired()) {
+            InspectionQueue q = inspections;
+            if (q == null || !q.submit(van))
+                completeInspection(van);
+        }
+    }
+
+    /**
+     * Clears a van's inspection flag, records the check and makes the van available again.
+     * If the check cannot be journaled the van is flagged again, so it stays out of the
+     * free pool and can be inspected again.
+     *
+     * @param van The inspected van.
+     * @return True if the van was flagged, false if another thread cleared it first or the van was retired.
+     * @throws UncheckedIOException if the journal could not be written.
+     */
+    private boolean completeInspection(Van van) {
+        long lsn = 0;
+        beginWrite();
+        try {
+            if (vehiclesById.get(van.getVehicleID()) != van)
+                return false; // Retired while queued.
+            if (!van.clearCheck())
+                return false;
+            Journal j = journal;
+            if (j != null) {
+                try {
+                    lsn = j.logVanCheck(van.getVehicleID());
+                } catch (RuntimeException e) {
+                    van.setCheck(true);
+                    throw e;
+                }
+            }
+            releaseToPool(van);
+        } finally {
+            endWrite();
+        }
+        publish(FleetEvent.Kind.VAN_CHECK, 0, van.getVehicleID(), van.getType(), null, 0);
+        commitJournal(lsn);
+        return true;
+    }
+
+    /**
+     * Returns the rules applied by hireVehicle when no rules are given.
+     *
+     * @return The current default rules.
+     */
+    public EligibilityRules getEligibilityRules() {
+        return rules;
+    }
+
+    /**
+     * Replaces the rules applied by hireVehicle when no rules are given.
+     *
+     * @param rules The new rules.
+     * @throws IllegalArgumentException if rules is null.
+     */
+    public void setEligibilityRules(EligibilityRules rules) {
+        if (rules == null)
+            throw new IllegalArgumentException("Rules cannot be null!");
+        this.rules = rules;
+    }
+
+    /**
+     * Attempts to hire a vehicle for a customer.
+     * Checks customer eligibility and vehicle availability.
+     *
+     * @param customerRecord The customer requesting the hire.
+     * @param vehicleType    The type of vehicle to hire ("Car" or "Van").
+     * @param duration       The duration of the hire in days.
+     * @return True if the hire was successful, false otherwise.
+     */
+    public boolean hireVehicle(CustomerRecord customerRecord, String vehicleType, int duration) {
+        return hireVehicle(customerRecord, vehicleType, duration, rules);
+    }
+
+    /**
+     * Attempts to hire a vehicle for a customer under a given rule set,
+     * for example the rules of one branch.
+     * Checks customer eligibility and vehicle availability.
+     *
+     * @param customerRecord The customer requesting the hire.
+     * @param vehicleType    The type of vehicle to hire ("Car" or "Van").
+     * @param duration       The duration of the hire in days.
+     * @param rules          The rules the customer must meet.
+     * @return True if the hire was successful, false otherwise.
+     */
+    public boolean hireVehicle(CustomerRecord customerRecord, String vehicleType, int duration, EligibilityRules rules) {
+        return hire(customerRecord, vehicleType, duration, rules).isSuccess();
+    }
+
+    /**
+     * Attempts to hire a vehicle of the given type for a customer.
+     *
+     * @param customerRecord The customer requesting the hire.
+     * @param type           The type of vehicle to hire.
+     * @param duration       The duration of the hire in days.
+     * @return True if the hire was successful, false otherwise.
+     */
+    public boolean hireVehicle(CustomerRecord customerRecord, VehicleType type, int duration) {
+        return hireVehicle(customerRecord, type, duration, rules);
+    }
+
+    /**
+     * Attempts to hire a vehicle of the given type for a customer under a given rule set.
+     * Checks customer eligibility and vehicle availability.
+     *
+     * @param customerRecord The customer requesting the hire.
+     * @param type           The type of vehicle to hire.
+     * @param duration       The duration of the hire in days.
+     * @param rules          The rules the customer must meet.
+     * @return True if the hire was successful, false otherwise.
+     */
+    public boolean hireVehicle(CustomerRecord customerRecord, VehicleType type, int duration, EligibilityRules rules) {
+        return hire(customerRecord, type, duration, rules).isSuccess();
+    }
+
+    /**
+     * Attempts to hire a vehicle for a customer and reports the outcome.
+     * An unknown vehicle type is reported as NONE_AVAILABLE.
+     *
+     * @param customerRecord The customer requesting the hire.
+     * @param vehicleType    The type of vehicle to hire ("Car" or "Van").
+     * @param duration       The duration of the hire in days.
+     * @return The vehicle hired, or the reason the hire failed.
+     */
+    public HireResult hire(CustomerRecord customerRecord, String vehicleType, int duration) {
+        return hire(customerRecord, vehicleType, duration, rules);
+    }
+
+    /**
+     * Attempts to hire a vehicle for a customer under a given rule set and reports the outcome.
+     * An unknown vehicle type is reported as NONE_AVAILABLE.
+     *
+     * @param customerRecord The customer requesting the hire.
+     * @param vehicleType    The type of vehicle to hire ("Car" or "Van").
+     * @param duration       The duration of the hire in days.
+     * @param rules          The rules the customer must meet.
+     * @return The vehicle hired, or the reason the hire failed.
+     */
+    public HireResult hire(CustomerRecord customerRecord, String vehicleType, int duration, EligibilityRules rules) {
+        VehicleType type = VehicleType.lookup(vehicleType);
+        if (type == null) {
+            publish(FleetEvent.Kind.HIRE, customerRecord.getCustomerNum(), null, null, HireStatus.NONE_AVAILABLE, duration);
+            return HireResult.failure(HireStatus.NONE_AVAILABLE);
+        }
+        return hire(customerRecord, type, duration, rules);
+    }
+
+    /**
+     * Attempts to hire a vehicle of the given type for a customer and reports the outcome.
+     *
+     * @param customerRecord The customer requesting the hire.
+     * @param type           The type of vehicle to hire.
+     * @param duration       The duration of the hire in days.
+     * @return The vehicle hired, or the reason the hire failed.
+     */
+    public HireResult hire(CustomerRecord customerRecord, VehicleType type, int duration) {
+        return hire(customerRecord, type, duration, rules);
+    }
+
+    /**
+     * Attempts to hire a vehicle of the given type for a customer under a given rule set
+     * and reports the outcome.
+     * Checks the rental limit, then customer eligibility, then vehicle availability,
+     * so a customer at the limit is refused with RENTAL_LIMIT whatever they ask for.
+     * Failed hires return a shared result; they allocate nothing unless an event
+     * consumer is registered, in which case the HIRE event published for the failure
+     * is allocated.
+     *
+     * @param customerRecord The customer requesting the hire.
+     * @param type           The type of vehicle to hire.
+     * @param duration       The duration of the hire in days.
+     * @param rules          The rules the customer must meet.
+     * @return The vehicle hired, or the reason the hire failed.
+     */
+    public HireResult hire(CustomerRecord customerRecord, VehicleType type, int duration, EligibilityRules rules) {
+        int customerNum = customerRecord.getCustomerNum();
+        HireStatus status;
+        Vehicle v = null;
+        long lsn = 0;
+        beginWrite();
+        try {
+            synchronized (customerLock(customerNum)) {
+                // Check if the customer has reached the rental limit, then the age
+                // and license requirements for the vehicle type, then claim the
+                // first hireable vehicle from the pool for this type.
+                if (atRentalLimit(customerNum, rules))
+                    status = HireStatus.RENTAL_LIMIT;
+                else if ((status = rules.checkCustomer(customerRecord, type)) == HireStatus.SUCCESS) {
+                    if ((v = claimFromPool(freePools[type.ordinal()])) == null)
+                        status = HireStatus.NONE_AVAILABLE;
+                    else {
+                        try {
+                            lsn = assignLocked(customerRecord, v, duration, rules);
+                        } catch (RuntimeException e) { // Not journaled; give the vehicle back.
+                            v.release();
+                            releaseToPool(v);
+                            throw e;
+                        }
+                        available.decrementAndGet(type.ordinal());
+                    }
+                }
+            }
+        } finally {
+            endWrite();
+        }
+        if (v != null) {
+            commitJournal(lsn);
+            return HireResult.success(v);
+        }
+        publish(FleetEvent.Kind.HIRE, customerNum, null, type, status, duration);
+        return HireResult.failure(status);
+    }
+
+    /**
+     * Hires vehicles for a batch of requests, such as a group booking.
+     *
+     * @param requests The hire requests.
+     * @return The result of each request, in request order.
+     * @see #hireVehicles(List, EligibilityRules)
+     */
+    public List<HireResult> hireVehicles(List<HireRequest> requests) {
+        return hireVehicles(requests, rules);
+    }
+
+    /**
+     * Hires vehicles for a batch of requests under a given rule set.
+     * Each customer is checked against the rules once per vehicle type, but as in
+     * a single hire a request from a customer at the rental limit fails with
+     * RENTAL_LIMIT before eligibility is considered. Vehicles are then claimed from each type's free pool in a single pass, each customer
+     * lock stripe is taken once for all the requests that fall in it, and the
+     * availability counters are updated once per type. Requests are served in
+     * order within a stripe, so a customer's later requests fail first when they
+     * reach the rental limit or the pool runs out.
+     *
+     * @param requests The hire requests.
+     * @param rules    The rules the customers must meet.
+     * @return The result of each request, in request order.
+     * @throws IllegalArgumentException if the list or any request in it is null.
+     */
+    public List<HireResult> hireVehicles(List<HireRequest> requests, EligibilityRules rules) {
+        if (requests == null)
+            throw new IllegalArgumentException("Hire requests cannot be null!");
+        int n = requests.size();
+        HireResult[] results = new HireResult[n];
+        int[] customerNums = new int[n];
+        HireStatus[] eligibility = new HireStatus[n];
+        int[] all = new int[n];
+        int[] wanted = new int[freePools.length];
+        long[] lsn = new long[1]; // Of the last record the batch journaled.
+
+        // Check each customer once per vehicle type.
+        Map<Long, HireStatus> checked = new HashMap<>();
+        for (int i = 0; i < n; i++) {
+            HireRequest request = requests.get(i);
+            if (request == null)
+                throw new IllegalArgumentException("Hire requests cannot be null!");
+            all[i] = i;
+            VehicleType type = request.type();
+            customerNums[i] = request.customer().getCustomerNum();
+            eligibility[i] = checked.computeIfAbsent((long) customerNums[i] << 8 | type.ordinal(),
+                    k -> rules.checkCustomer(request.customer(), type));
+            if (eligibility[i] == HireStatus.SUCCESS)
+                wanted[type.ordinal()]++;
+        }
+
+        beginWrite();
+        try {
+            // Claim up to the number of vehicles wanted from each pool at once.
+            List<Deque<Vehicle>> claimed = new ArrayList<>(freePools.length);
+            for (int t = 0; t < freePools.length; t++)
+                claimed.add(claimFromPool(freePools[t], wanted[t]));
+
+            int[] hired = new int[freePools.length];
+            try {
+                forEachByStripe(all, n, customerNums, i -> {
+                    HireRequest request = requests.get(i);
+                    int t = request.type().ordinal();
+                    HireStatus status = atRentalLimit(customerNums[i], rules) ? HireStatus.RENTAL_LIMIT : eligibility[i];
+                    if (status == HireStatus.SUCCESS) {
+                        Vehicle v = claimed.get(t).pollFirst();
+                        if (v != null) {
+                            try {
+                                lsn[0] = Math.max(lsn[0], assignLocked(request.customer(), v, request.duration(), rules));
+                            } catch (RuntimeException e) { // Not journaled; give the vehicle back.
+                                claimed.get(t).addFirst(v);
+                                throw e;
+                            }
+                            hired[t]++;
+                            results[i] = HireResult.success(v);
+                            return;
+                        }
+                        status = HireStatus.NONE_AVAILABLE;
+                    }
+                    results[i] = HireResult.failure(status);
+                    publish(FleetEvent.Kind.HIRE, customerNums[i], null, request.type(), status, request.duration());
+                });
+            } finally {
+                // Update the counters for the hires made, even if the batch stopped part
+                // way, and put back vehicles that were claimed but not hired.
+                for (int t = 0; t < freePools.length; t++) {
+                    if (hired[t] > 0)
+                        available.addAndGet(t, -hired[t]);
+                    Deque<Vehicle> unused = claimed.get(t);
+                    if (!unused.isEmpty()) {
+                        for (Vehicle v : unused)
+                            v.release();
+                        releaseToPool(freePools[t], unused);
+                    }
+                }
+            }
+        } finally {
+            endWrite();
+        }
+        commitJournal(lsn[0]);
+        return Collections.unmodifiableList(Arrays.asList(results));
+    }
+
+    /**
+     * Checks whether a customer already has the maximum number of vehicles on hire.
+     * The caller must hold the customer's lock stripe.
+     *
+     * @param customerNum The customer number.
+     * @param rules       The rules giving the rental limit.
+     * @return True if the customer cannot hire another vehicle, false otherwise.
+     */
+    private boolean atRentalLimit(int customerNum, EligibilityRules rules) {
+        Set<Vehicle> vehicleSet = hiredVehicles.get(customerNum);
+        return vehicleSet != null && vehicleSet.size() >= rules.getMaxRentals();
+    }
+
+    /**
+     * Records a claimed vehicle as hired by a customer and publishes the hire.
+     * The caller must hold the customer's lock stripe and update the counters.
+     * The hire is journaled before anything else changes, so if the journal cannot
+     * be written nothing is recorded and the caller must give the vehicle back.
+     *
+     * @param customerRecord The hiring customer.
+     * @param v              The claimed vehicle.
+     * @param duration       The duration of the hire in days.
+     * @param rules          The rules giving the van check threshold.
+     * @return The LSN of the hire record, or 0 if no journal is open.
+     * @throws UncheckedIOException if the journal could not be written.
+     */
+    private long assignLocked(CustomerRecord customerRecord, Vehicle v, int duration, EligibilityRules rules) {
+        int customerNum = customerRecord.getCustomerNum();
+        VehicleType type = v.getType();
+        boolean check = v instanceof Van && rules.requiresCheck(type, duration);
+        long now = System.currentTimeMillis();
+        HireRecord hire = new HireRecord(customerRecord, v, now, HireRecord.dueAfter(now, duration));
+        Journal j = journal;
+        long lsn = 0;
+        if (j != null) {
+            if (customersByNumber.get(customerNum) != customerRecord) // Not added to the manager; the journal needs the record.
+                j.logAddCustomer(customerRecord, false);
+            lsn = j.logHire(customerNum, v.getVehicleID(), duration, check, hire.getStartMillis(), hire.getDueMillis());
+        }
+
+        if (check) // Mark vans for inspection after long hires.
+            ((Van) v).setCheck(true);
+        hiredVehicles.computeIfAbsent(customerNum, k -> new HashSet<>()).add(v);
+        addHire(hire);
+        hireVersion.incrementAndGet();
+        publish(FleetEvent.Kind.HIRE, customerNum, v.getVehicleID(), type, HireStatus.SUCCESS, duration);
+        return lsn;
+    }
+
+    /**
+     * Indexes a hire by its vehicle and schedules its due time, without waiting for the wheel.
+     *
+     * @param hire The hire.
+     */
+    private void addHire(HireRecord hire) {
+        hire.timer = dueTimes.schedule(hire, hire.getDueMillis());
+        hires.put(hire.getVehicle().getVehicleID(), hire);
+    }
+
+    /**
+     * Drops the hire of a returned vehicle, cancelling its due time without waiting for the wheel.
+     *
+     * @param vehicleID The ID of the vehicle.
+     */
+    private void removeHire(VehicleID vehicleID) {
+        HireRecord hire = hires.remove(vehicleID);
+        if (hire == null)
+            return;
+        dueTimes.cancel(hire.timer);
+        overdue.remove(hire);
+    }
+
+    /**
+     * Runs an action for each listed request, taking each customer lock stripe once
+     * for all the requests that fall in it. Stripes are taken one at a time in
+     * ascending order, and requests keep their order within a stripe.
+     *
+     * @param indexes      The request indexes to process.
+     * @param count        The number of indexes in use.
+     * @param customerNums The customer number of every request, by index.
+     * @param action       The action to run under the stripe lock for each index.
+     */
+    private void forEachByStripe(int[] indexes, int count, int[] customerNums, IntConsumer action) {
+        // Counting sort of the indexes by stripe.
+        int[] start = new int[CUSTOMER_STRIPES + 1];
+        for (int i = 0; i < count; i++)
+            start[(customerNums[indexes[i]] & (CUSTOMER_STRIPES - 1)) + 1]++;
+        for (int s = 0; s < CUSTOMER_STRIPES; s++)
+            start[s + 1] += start[s];
+        int[] next = start.clone();
+        int[] sorted = new int[count];
+        for (int i = 0; i < count; i++)
+            sorted[next[customerNums[indexes[i]] & (CUSTOMER_STRIPES - 1)]++] = indexes[i];
+
+        for (int s = 0; s < CUSTOMER_STRIPES; s++) {
+            if (start[s] == start[s + 1])
+                continue;
+            synchronized (customerLocks[s]) {
+                for (int i = start[s]; i < start[s + 1]; i++)
+                    action.accept(sorted[i]);
+            }
+        }
+    }
+
+    /**
+     * Returns a vehicle and updates its status.
+     * Removes the vehicle from the customer's hired list, updates mileage, and performs maintenance if needed.
+     *
+     * @param vehicleID      The ID of the vehicle being returned.
+     * @param customerRecord The customer returning the vehicle.
+     * @param mileage        The mileage driven during the hire.
+     * @return RETURNED, or the reason nothing was returned.
+     */
+    public ReturnStatus returnVehicle(VehicleID vehicleID, CustomerRecord customerRecord, int mileage) {
+        Vehicle target = vehiclesById.get(vehicleID);
+        if (target == null) return ReturnStatus.UNKNOWN_VEHICLE; // Vehicle not found.
+
+        ReturnStatus status;
+        long lsn;
+        beginWrite();
+        try {
+            synchronized (customerLock(customerRecord.getCustomerNum())) {
+                lsn = returnLocked(target, customerRecord.getCustomerNum(), mileage);
+            }
+            status = lsn == NOT_RETURNED ? ReturnStatus.NOT_HIRED_BY_CUSTOMER : ReturnStatus.RETURNED;
+            if (status == ReturnStatus.RETURNED) {
+                available.incrementAndGet(target.getType().ordinal());
+                releaseToPool(target); // Make the vehicle available again.
+            }
+        } finally {
+            endWrite();
+        }
+        if (status == ReturnStatus.RETURNED) {
+            queueInspection(target); // May clear the van in a write section of its own.
+            commitJournal(lsn);
+        }
+        return status;
+    }
+
+    /**
+     * Returns a batch of vehicles, such as the end-of-day returns at a depot.
+     * Each customer lock stripe is taken once for all the requests that fall in it,
+     * and the counters and free pools are updated once per vehicle type.
+     *
+     * @param requests The return requests.
+     * @return The status of each request, in request order.
+     * @throws IllegalArgumentException if the list or any request in it is null.
+     */
+    public List<ReturnStatus> returnVehicles(List<ReturnRequest> requests) {
+        if (requests == null)
+            throw new IllegalArgumentException("Return requests cannot be null!");
+        int n = requests.size();
+        ReturnStatus[] results = new ReturnStatus[n];
+        Vehicle[] targets = new Vehicle[n];
+        int[] customerNums = new int[n];
+        int[] pending = new int[n];
+        int pendingCount = 0;
+        for (int i = 0; i < n; i++) {
+            ReturnRequest request = requests.get(i);
+            if (request == null)
+                throw new IllegalArgumentException("Return requests cannot be null!");
+            targets[i] = vehiclesById.get(request.vehicleID());
+            customerNums[i] = request.customer().getCustomerNum();
+            if (targets[i] == null)
+                results[i] = ReturnStatus.UNKNOWN_VEHICLE;
+            else
+                pending[pendingCount++] = i;
+        }
+
+        List<List<Vehicle>> returned = new ArrayList<>(freePools.length);
+        long[] lsn = new long[1]; // Of the last record the batch journaled.
+        beginWrite();
+        try {
+            try {
+                forEachByStripe(pending, pendingCount, customerNums, i -> {
+                    long returnLsn = returnLocked(targets[i], customerNums[i], requests.get(i).mileage());
+                    if (returnLsn == NOT_RETURNED)
+                        results[i] = ReturnStatus.NOT_HIRED_BY_CUSTOMER;
+                    else {
+                        results[i] = ReturnStatus.RETURNED;
+                        lsn[0] = Math.max(lsn[0], returnLsn);
+                    }
+                });
+            } finally {
+                // Update the counters and free pools once per type, for the returns
+                // made even if the batch stopped part way.
+                for (int t = 0; t < freePools.length; t++)
+                    returned.add(new ArrayList<>());
+                for (int i = 0; i < n; i++)
+                    if (results[i] == ReturnStatus.RETURNED)
+                        returned.get(targets[i].getType().ordinal()).add(targets[i]);
+                for (int t = 0; t < freePools.length; t++) {
+                    List<Vehicle> vehicles = returned.get(t);
+                    if (!vehicles.isEmpty()) {
+                        available.addAndGet(t, vehicles.size());
+                        releaseToPool(freePools[t], vehicles);
+                    }
+                }
+            }
+        } finally {
+            endWrite();
+        }
+        for (List<Vehicle> vehicles : returned) // May clear vans in write sections of their own.
+            for (Vehicle v : vehicles)
+                queueInspection(v);
+        commitJournal(lsn[0]);
+        return Collections.unmodifiableList(Arrays.asList(results));
+    }
+
+    /**
+     * Ends a customer's hire of a vehicle: removes it from the customer's hired list,
+     * updates its mileage, performs maintenance if needed and publishes the return.
+     * The caller must hold the customer's lock stripe, and on success update the
+     * counters and put the vehicle back in its free pool. The return is journaled
+     * before anything else changes, so if the journal cannot be written the vehicle
+     * stays hired by the customer.
+     *
+     * @param target      The vehicle being returned.
+     * @param customerNum The number of the customer returning it.
+     * @param mileage     The mileage driven during the hire.
+     * @return The LSN of the return's last record, 0 if no journal is open, or
+     * NOT_RETURNED if the customer was not hiring the vehicle.
+     * @throws UncheckedIOException if the journal could not be written.
+     */
+    private long returnLocked(Vehicle target, int customerNum, int mileage) {
+        Set<Vehicle> vehicleSet = hiredVehicles.get(customerNum);
+        if (vehicleSet == null || !vehicleSet.contains(target))
+            return NOT_RETURNED;
+        VehicleID vehicleID = target.getVehicleID();
+
+        // Work out whether the vehicle will be serviced, unless maintenance is scheduled,
+        // in which case a due vehicle waits for recordService, and whether a van is cleared
+        // now or stays flagged until queueInspection hands it to an inspector. Nobody else
+        // changes a hired vehicle, so this matches what is done below.
+        MaintenanceScheduler m = maintenance;
+        boolean serviced = m == null && target.getCurrentMileage() + mileage >= target.getDistanceRequirement();
+        boolean checked = inspections == null && target instanceof Van van && van.needCheck();
+        Journal j = journal;
+        long lsn = 0;
+        if (j != null) {
+            lsn = j.logReturn(customerNum, vehicleID, mileage);
+            if (serviced)
+                lsn = j.logService(vehicleID);
+            if (checked)
+                lsn = j.logVanCheck(vehicleID);
+        }
+
+        // Remove the vehicle from the customer's hired list, and the customer from the
+        // map if no vehicles are left.
+        vehicleSet.remove(target);
+        removeHire(vehicleID);
+        if (vehicleSet.isEmpty())
+            hiredVehicles.remove(customerNum);
+        hireVersion.incrementAndGet();
+
+        // Update the vehicle's status and perform maintenance if required.
+        target.setCurrentMileage(mileage + target.getCurrentMileage());
+        if (serviced)
+            target.performServiceIfDue();
+        if (m != null)
+            m.track(target);
+        if (checked)
+            ((Van) target).setCheck(false);
+        target.release();
+
+        VehicleType type = target.getType();
+        publish(FleetEvent.Kind.RETURN, customerNum, vehicleID, type, null, mileage);
+        if (serviced)
+            publish(FleetEvent.Kind.SERVICE, customerNum, vehicleID, type, null, 0);
+        if (checked)
+            publish(FleetEvent.Kind.VAN_CHECK, customerNum, vehicleID, type, null, 0);
+        return lsn;
+    }
+
+    /**
+     * Returns a collection of vehicles currently hired by a specific customer.
+     *
+     * @param customerRecord The customer whose hired vehicles are requested.
+     * @return An unmodifiable collection of vehicles hired by the customer.
+     * or an empty collection if none exist
+     */
+    public Collection<Vehicle> getVechilesByCustomer(CustomerRecord customerRecord) {
+        int customerNum = customerRecord.getCustomerNum();
+        synchronized (customerLock(customerNum)) {
+            Set<Vehicle> vehicleSet = hiredVehicles.get(customerNum);
+            if (vehicleSet == null)
+                return Collections.emptySet();
+            return Collections.unmodifiableSet(new HashSet<>(vehicleSet));
+        }
     }
 }
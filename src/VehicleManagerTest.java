@@ -1,5 +1,16 @@
+import java.io.IOException;
 import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
 
 /**
  * VehicleManagerTest – Verifies the logic of VehicleManager
@@ -21,6 +32,7 @@ public class VehicleManagerTest {
 
         try {
             System.out.println("Starting vehicle rental system tests...\n");
+            VehicleManager.getInstance().setCounterVerification(true);
             test.testSingleton();
             test.testAddVehicle();
             test.testAddCustomer();
@@ -28,6 +40,25 @@ public class VehicleManagerTest {
             test.testRentalLimit();
             test.testAvailableVehicle();
             test.testReturnVehicle();
+            test.testFreePool();
+            test.testConcurrentHireAndReturn();
+            test.testAtomicClaim();
+            test.testLookupIndex();
+            test.testConcurrentRegistration();
+            test.testAge();
+            test.testEvents();
+            test.testHireResult();
+            test.testBatchHireAndReturn();
+            test.testHiredViews();
+            test.testSnapshot();
+            test.testJournal();
+            test.testCheckpoint();
+            test.testVehicleStore();
+            test.testFleetTable();
+            test.testScheduledMaintenance();
+            test.testInspectionQueue();
+            test.testHireRecords();
+            test.testRetireVehicle();
 
             System.out.println("\nAll VehicleManager test cases passed successfully.");
         } catch (AssertionError e) {
@@ -80,7 +111,7 @@ public class VehicleManagerTest {
 
         //test exception case: null
         try {
-            Vehicle truck = manager.addVehicle(null);
+            Vehicle truck = manager.addVehicle((String) null);
             Assertions.assertNotReached();
         } catch (Throwable t) {
             Assertions.assertExpectedThrowable(IllegalArgumentException.class, t);
@@ -106,6 +137,8 @@ public class VehicleManagerTest {
         CustomerRecord c1 = manager.addCustomerRecord("Harry", "Potter", dob, false);
         Assertions.assertNotNull(c1);
         Assertions.assertTrue(manager.getCustomers().contains(c1));
+        Assertions.assertEquals(c1, manager.getCustomerByNumber(c1.getCustomerNum()));
+        Assertions.assertNull(manager.getCustomerByNumber(-1));
 
         //test exception case: duplicate customerRecord)
         try {
@@ -115,6 +148,12 @@ public class VehicleManagerTest {
             Assertions.assertExpectedThrowable(IllegalArgumentException.class, t);
         }
 
+        //test names that concatenate to the same string are different customers
+        CustomerRecord c2 = manager.addCustomerRecord("Ann", "Lee", dob, false);
+        CustomerRecord c3 = manager.addCustomerRecord("An", "nLee", dob, false);
+        Assertions.assertNotEquals(c2, c3);
+        Assertions.assertFalse(c2.getCustomerNum() == c3.getCustomerNum());
+
         //test exception case: null name
         try {
             manager.addCustomerRecord("Amy", null, dob, true);
@@ -131,6 +170,22 @@ public class VehicleManagerTest {
             Assertions.assertExpectedThrowable(IllegalArgumentException.class, t);
         }
 
+        //test exception case: blank name
+        try {
+            CustomerRecord.getInstance(" ", "Jones", dob, true);
+            Assertions.assertNotReached();
+        } catch (Throwable t) {
+            Assertions.assertExpectedThrowable(IllegalArgumentException.class, t);
+        }
+
+        //test rejected details take no customer number
+        CustomerRecord c4 = manager.addCustomerRecord("Amy", "Jones", dob, true);
+        Assertions.assertEquals(c3.getCustomerNum() + 1, c4.getCustomerNum());
+
+        //test a lookup with untrimmed names finds the existing customer
+        Assertions.assertTrue(CustomerRecord.getInstance(" Amy", "Jones ", dob, false) == c4);
+        Assertions.assertTrue(CustomerRecord.getInstance("Amy", "Jones", dob, false) == c4);
+
         System.out.println("Add customer test passed.\n" + line);
     }
 
@@ -264,25 +319,1479 @@ public class VehicleManagerTest {
         System.out.println("Return vehicle test passed.\n" + line);
     }
 
+    /**
+     * Test that returned vehicles go back into the free pool and can be hired again.
+     */
+    private void testFreePool() {
+        System.out.println("Test free vehicle pool.");
+        VehicleManager manager = VehicleManager.getInstance();
+        resetManagerState();
+
+        Vehicle car1 = manager.addVehicle("Car");
+        Vehicle car2 = manager.addVehicle("Car");
+
+        Calendar cal = Calendar.getInstance();
+        cal.set(1985, Calendar.MAY, 5);
+        CustomerRecord customer =
+                manager.addCustomerRecord("Pool", "User", cal.getTime(), false);
+
+        Assertions.assertTrue(manager.hireVehicle(customer, "car", 2));
+        Assertions.assertTrue(manager.hireVehicle(customer, "car", 2));
+        Assertions.assertFalse(manager.hireVehicle(customer, "car", 2));
+        Assertions.assertTrue(car1.isHired());
+        Assertions.assertTrue(car2.isHired());
+
+        //a returned car is hireable again
+        manager.returnVehicle(car2.getVehicleID(), customer, 100);
+        Assertions.assertFalse(car2.isHired());
+        Assertions.assertTrue(manager.hireVehicle(customer, "Car", 2));
+        Assertions.assertTrue(car2.isHired());
+
+        //returning a vehicle twice must not put it in the pool twice
+        manager.returnVehicle(car1.getVehicleID(), customer, 100);
+        manager.returnVehicle(car1.getVehicleID(), customer, 100);
+        Assertions.assertTrue(manager.hireVehicle(customer, "Car", 2));
+        Assertions.assertFalse(manager.hireVehicle(customer, "Car", 2));
+        Assertions.assertEquals(0, manager.noOfAvailableVehicles("Car"));
+        Assertions.assertEquals(0, manager.noOfAvailableVehicles("Truck"));
+
+        System.out.println("Free vehicle pool test passed.\n" + line);
+    }
+
+    /**
+     * Test hires and returns from many threads at once.
+     * Verifies that no vehicle is ever hired to two customers, that no customer
+     * exceeds the rental limit and that the counters match the fleet afterwards.
+     */
+    private void testConcurrentHireAndReturn() {
+        System.out.println("Test concurrent hire and return.");
+        VehicleManager manager = VehicleManager.getInstance();
+        resetManagerState();
+
+        final int threads = 8;
+        final int opsPerThread = 300;
+        for (int i = 0; i < 40; i++) {
+            manager.addVehicle("Car");
+            manager.addVehicle("Van");
+        }
+        Calendar cal = Calendar.getInstance();
+        cal.set(1980, Calendar.JANUARY, 1);
+        List<CustomerRecord> customers = new ArrayList<>();
+        for (int i = 0; i < 50; i++)
+            customers.add(manager.addCustomerRecord("Stress" + i, "User", cal.getTime(), true));
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger hires = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(pool.submit(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                start.await();
+                for (int i = 0; i < opsPerThread; i++) {
+                    CustomerRecord c = customers.get(random.nextInt(customers.size()));
+                    if (random.nextBoolean()) {
+                        if (manager.hireVehicle(c, random.nextBoolean() ? "Car" : "Van", random.nextInt(1, 15)))
+                            hires.incrementAndGet();
+                    } else {
+                        Collection<Vehicle> held = manager.getVechilesByCustomer(c);
+                        if (!held.isEmpty()) {
+                            Vehicle v = held.iterator().next();
+                            manager.returnVehicle(v.getVehicleID(), c, random.nextInt(0, 500));
+                        }
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        try {
+            for (Future<?> f : futures)
+                f.get(60, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            throw new AssertionError("Concurrent worker failed: " + e, e);
+        } finally {
+            pool.shutdownNow();
+        }
+
+        //every hired vehicle belongs to exactly one customer, and no customer is over the limit
+        Set<Vehicle> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        int held = 0;
+        for (Set<Vehicle> vehicles : manager.getHiredVehicles().values()) {
+            Assertions.assertTrue(vehicles.size() <= 3);
+            for (Vehicle v : vehicles) {
+                Assertions.assertTrue(seen.add(v));
+                Assertions.assertTrue(v.isHired());
+                held++;
+            }
+        }
+        int hiredInFleet = 0;
+        for (Vehicle v : manager.getAllVehicles()) {
+            if (v.isHired())
+                hiredInFleet++;
+        }
+        Assertions.assertEquals(hiredInFleet, held);
+        Assertions.assertTrue(hires.get() >= held);
+        Assertions.assertEquals(80 - held, manager.noOfAvailableVehicles("Car") + manager.noOfAvailableVehicles("Van"));
+
+        System.out.println("Concurrent hire and return test passed.\n" + line);
+    }
+
+    /**
+     * Test the atomic claim and release operations on a vehicle.
+     * Verifies that only one of several racing threads can claim the same vehicle.
+     */
+    private void testAtomicClaim() {
+        System.out.println("Test atomic claim.");
+        Vehicle car = new Car();
+        Assertions.assertTrue(car.tryClaim());
+        Assertions.assertFalse(car.tryClaim());
+        Assertions.assertTrue(VehicleState.isHired(car.getState()));
+        Assertions.assertTrue(car.release());
+        Assertions.assertFalse(car.release());
+
+        //vehicles due a service or awaiting a check cannot be claimed
+        car.setCurrentMileage(car.getDistanceRequirement());
+        Assertions.assertFalse(car.tryClaim());
+        Assertions.assertTrue(car.performServiceIfDue());
+        Van van = new Van();
+        van.setCheck(true);
+        Assertions.assertFalse(van.tryClaim());
+        van.setCheck(false);
+        van.setCurrentMileage(1234);
+        Assertions.assertTrue(van.tryClaim());
+        Assertions.assertEquals(1234, VehicleState.mileage(van.getState()));
+
+        //only one racing thread wins the claim
+        for (int round = 0; round < 100; round++) {
+            Vehicle contested = new Car();
+            AtomicInteger winners = new AtomicInteger();
+            CountDownLatch start = new CountDownLatch(1);
+            List<Thread> racers = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                Thread racer = new Thread(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    if (contested.tryClaim())
+                        winners.incrementAndGet();
+                });
+                racer.start();
+                racers.add(racer);
+            }
+            start.countDown();
+            for (Thread racer : racers) {
+                try {
+                    racer.join();
+                } catch (InterruptedException e) {
+                    throw new AssertionError("Interrupted while waiting for racers", e);
+                }
+            }
+            Assertions.assertEquals(1, winners.get());
+        }
+
+        System.out.println("Atomic claim test passed.\n" + line);
+    }
+
+    /**
+     * Test lookups of vehicles and hirers by VehicleID.
+     */
+    private void testLookupIndex() {
+        System.out.println("Test vehicle lookup index.");
+        VehicleManager manager = VehicleManager.getInstance();
+        resetManagerState();
+
+        Vehicle van = manager.addVehicle("Van");
+        Calendar cal = Calendar.getInstance();
+        cal.set(1975, Calendar.JUNE, 1);
+        CustomerRecord owner = manager.addCustomerRecord("Index", "Owner", cal.getTime(), true);
+        CustomerRecord other = manager.addCustomerRecord("Index", "Other", cal.getTime(), true);
+
+        Assertions.assertTrue(manager.getVehicle(van.getVehicleID()) == van);
+        Assertions.assertTrue(van.getVehicleID() == van.getVehicleID()); // Kept by the view, not rebuilt.
+        Assertions.assertTrue(manager.getVehicle(VehicleID.parse(van.getVehicleID().toString())) == van);
+        Assertions.assertNull(manager.getHirer(van.getVehicleID()));
+
+        Assertions.assertTrue(manager.hireVehicle(owner, "Van", 2));
+        Assertions.assertEquals(owner, manager.getHirer(van.getVehicleID()));
+
+        //another customer cannot return a vehicle they did not hire
+        Assertions.assertEquals(ReturnStatus.NOT_HIRED_BY_CUSTOMER, manager.returnVehicle(van.getVehicleID(), other, 10));
+        Assertions.assertTrue(van.isHired());
+        Assertions.assertEquals(owner, manager.getHirer(van.getVehicleID()));
+
+        Assertions.assertEquals(ReturnStatus.RETURNED, manager.returnVehicle(van.getVehicleID(), owner, 10));
+        Assertions.assertFalse(van.isHired());
+        Assertions.assertNull(manager.getHirer(van.getVehicleID()));
+        Assertions.assertEquals(ReturnStatus.UNKNOWN_VEHICLE, manager.returnVehicle(VehicleID.getInstance("Car"), owner, 10));
+
+        System.out.println("Vehicle lookup index test passed.\n" + line);
+    }
+
+    /**
+     * Test customer registration from many threads at once.
+     * Every thread asking for the same person gets the same record, and distinct
+     * people get distinct customer numbers.
+     */
+    private void testConcurrentRegistration() {
+        System.out.println("Test concurrent customer registration.");
+        Calendar cal = Calendar.getInstance();
+        cal.set(1970, Calendar.APRIL, 4);
+        Date dob = cal.getTime();
+
+        final int threads = 8;
+        final int people = 200;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<CustomerRecord[]>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(pool.submit(() -> {
+                CustomerRecord[] seen = new CustomerRecord[people];
+                for (int i = 0; i < people; i++)
+                    seen[i] = CustomerRecord.getInstance("Racer" + i, "User", dob, false);
+                return seen;
+            }));
+        }
+        try {
+            CustomerRecord[] first = futures.get(0).get(60, TimeUnit.SECONDS);
+            for (Future<CustomerRecord[]> f : futures) {
+                CustomerRecord[] seen = f.get(60, TimeUnit.SECONDS);
+                for (int i = 0; i < people; i++)
+                    Assertions.assertTrue(seen[i] == first[i]);
+            }
+            Set<Integer> numbers = new HashSet<>();
+            for (CustomerRecord c : first)
+                Assertions.assertTrue(numbers.add(c.getCustomerNum()));
+        } catch (InterruptedException | ExecutionException | TimeoutException e) {
+            throw new AssertionError("Concurrent registration failed: " + e, e);
+        } finally {
+            pool.shutdownNow();
+        }
+
+        System.out.println("Concurrent customer registration test passed.\n" + line);
+    }
+
+    /**
+     * Test age calculation around a birthday, and that repeated calls agree.
+     */
+    private void testAge() {
+        System.out.println("Test customer age.");
+        Calendar cal = Calendar.getInstance();
+        cal.add(Calendar.YEAR, -18);
+        CustomerRecord birthdayToday = CustomerRecord.getInstance("Birthday", "Today", cal.getTime(), false);
+        cal.add(Calendar.DATE, 1);
+        CustomerRecord birthdayTomorrow = CustomerRecord.getInstance("Birthday", "Tomorrow", cal.getTime(), false);
+
+        Assertions.assertEquals(18, birthdayToday.getAge());
+        Assertions.assertEquals(17, birthdayTomorrow.getAge());
+        Assertions.assertEquals(18, birthdayToday.getAge()); // Served from the per-day cache.
+        Assertions.assertEquals(17, birthdayTomorrow.getAge());
+
+        System.out.println("Customer age test passed.\n" + line);
+    }
+
     /**
      * Reset manager of VehicleManager.
      */
     private void resetManagerState() {
         try {
             VehicleManager manager = VehicleManager.getInstance();
-            Field allVehiclesField = VehicleManager.class.getDeclaredField("allVehicles");
-            Field customersField = VehicleManager.class.getDeclaredField("customers");
-            Field hiredVehiclesField = VehicleManager.class.getDeclaredField("hiredVehicles");
-            allVehiclesField.setAccessible(true);
-            customersField.setAccessible(true);
-            hiredVehiclesField.setAccessible(true);
-
-            ((List<?>) allVehiclesField.get(manager)).clear();
-            ((List<?>) customersField.get(manager)).clear();
-            ((Map<?, ?>) hiredVehiclesField.get(manager)).clear();
+            Method reset = VehicleManager.class.getDeclaredMethod("reset");
+            reset.setAccessible(true);
+            reset.invoke(manager);
         } catch (ReflectiveOperationException e) {
             throw new RuntimeException("Failed to reset VehicleManager state", e);
         }
     }
-}
 
+    /**
+     * Test that hires and returns are published to the event log with their outcomes,
+     * and that a full event log drops events instead of blocking.
+     */
+    private void testEvents() {
+        System.out.println("Test fleet events.");
+        VehicleManager manager = VehicleManager.getInstance();
+        resetManagerState();
+        Vehicle van = manager.addVehicle("Van");
+        Calendar cal = Calendar.getInstance();
+        cal.set(1980, Calendar.MARCH, 3);
+        CustomerRecord customer = manager.addCustomerRecord("Event", "Driver", cal.getTime(), true);
+
+        List<FleetEvent> received = new CopyOnWriteArrayList<>();
+        Consumer<FleetEvent> collector = received::add;
+        EventLog log = manager.getEventLog();
+        log.flush(5, TimeUnit.SECONDS); // Skip events from earlier tests.
+        log.addConsumer(collector);
+        try {
+            Assertions.assertEquals(HireStatus.NONE_AVAILABLE, manager.hire(customer, VehicleType.CAR, 1).getStatus());
+            Assertions.assertEquals(HireStatus.SUCCESS, manager.hire(customer, VehicleType.VAN, 12).getStatus());
+            Assertions.assertEquals(ReturnStatus.RETURNED, manager.returnVehicle(van.getVehicleID(), customer, 20000));
+            Assertions.assertTrue(log.flush(5, TimeUnit.SECONDS));
+        } finally {
+            log.removeConsumer(collector);
+        }
+
+        Assertions.assertEquals(5, received.size());
+        Assertions.assertEquals(FleetEvent.Kind.HIRE, received.get(0).kind());
+        Assertions.assertEquals(HireStatus.NONE_AVAILABLE, received.get(0).hireStatus());
+        Assertions.assertNull(received.get(0).vehicleID());
+        Assertions.assertEquals(HireStatus.SUCCESS, received.get(1).hireStatus());
+        Assertions.assertEquals(van.getVehicleID(), received.get(1).vehicleID());
+        Assertions.assertEquals(FleetEvent.Kind.RETURN, received.get(2).kind());
+        Assertions.assertEquals(20000, received.get(2).value());
+        Assertions.assertEquals(FleetEvent.Kind.SERVICE, received.get(3).kind());
+        Assertions.assertEquals(FleetEvent.Kind.VAN_CHECK, received.get(4).kind());
+        Assertions.assertEquals(customer.getCustomerNum(), received.get(4).customerNum());
+
+        //with no consumer registered, no event is built or queued
+        long published = log.backlog() + log.droppedCount();
+        Assertions.assertFalse(log.hasConsumers());
+        Assertions.assertEquals(HireStatus.NONE_AVAILABLE, manager.hire(customer, VehicleType.CAR, 1).getStatus());
+        Assertions.assertEquals(published, log.backlog() + log.droppedCount());
+
+        //a slow consumer fills a small ring, and further events are dropped
+        EventLog small = new EventLog(4);
+        CountDownLatch gate = new CountDownLatch(1);
+        small.addConsumer(e -> {
+            try {
+                gate.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        FleetEvent event = received.get(0);
+        int queued = 0;
+        for (int i = 0; i < 20; i++)
+            if (small.publish(event))
+                queued++;
+        Assertions.assertTrue(queued <= 5); // Four in the ring, plus one the writer may hold.
+        Assertions.assertEquals(20 - queued, (int) small.droppedCount());
+        gate.countDown();
+        Assertions.assertTrue(small.flush(5, TimeUnit.SECONDS));
+        small.close();
+        Assertions.assertFalse(small.publish(event));
+
+        System.out.println("Fleet events test passed.\n" + line);
+    }
+
+    /**
+     * Test that hire results name the vehicle hired or the reason the hire failed,
+     * and that each failure reason is a shared instance.
+     */
+    private void testHireResult() {
+        System.out.println("Test hire results.");
+        VehicleManager manager = VehicleManager.getInstance();
+        resetManagerState();
+        Vehicle car = manager.addVehicle("Car");
+        manager.addVehicle("Car");
+        manager.addVehicle("Car");
+        manager.addVehicle("Car");
+        Calendar cal = Calendar.getInstance();
+        cal.set(1990, Calendar.JULY, 7);
+        CustomerRecord adult = manager.addCustomerRecord("Result", "Adult", cal.getTime(), false);
+        cal = Calendar.getInstance();
+        cal.add(Calendar.YEAR, -20);
+        CustomerRecord young = manager.addCustomerRecord("Result", "Young", cal.getTime(), true);
+
+        HireResult hired = manager.hire(adult, "Car", 2);
+        Assertions.assertTrue(hired.isSuccess());
+        Assertions.assertTrue(hired.getVehicle() == car);
+        Assertions.assertTrue(car.isHired());
+
+        Assertions.assertEquals(HireStatus.NO_LICENCE, manager.hire(adult, VehicleType.VAN, 2).getStatus());
+        Assertions.assertEquals(HireStatus.UNDERAGE, manager.hire(young, "Van", 2).getStatus());
+        Assertions.assertEquals(HireStatus.NONE_AVAILABLE, manager.hire(adult, "Truck", 2).getStatus());
+        Assertions.assertTrue(manager.hire(adult, "Car", 2).isSuccess());
+        Assertions.assertTrue(manager.hire(adult, "Car", 2).isSuccess());
+        HireResult limit = manager.hire(adult, "Car", 2);
+        Assertions.assertEquals(HireStatus.RENTAL_LIMIT, limit.getStatus());
+        Assertions.assertFalse(limit.isSuccess());
+        Assertions.assertNull(limit.getVehicle());
+        Assertions.assertTrue(limit == manager.hire(adult, "Car", 2));
+        Assertions.assertTrue(limit == HireResult.failure(HireStatus.RENTAL_LIMIT));
+
+        //the rental limit is checked before eligibility, as it always was
+        Assertions.assertEquals(HireStatus.RENTAL_LIMIT, manager.hire(adult, VehicleType.VAN, 2).getStatus());
+        Assertions.assertEquals(HireStatus.RENTAL_LIMIT,
+                manager.hireVehicles(List.of(new HireRequest(adult, "Van", 2))).get(0).getStatus());
+
+        try {
+            HireResult.failure(HireStatus.SUCCESS);
+            Assertions.assertNotReached();
+        } catch (Throwable t) {
+            Assertions.assertExpectedThrowable(IllegalArgumentException.class, t);
+        }
+
+        System.out.println("Hire result test passed.\n" + line);
+    }
+
+    /**
+     * Test hiring and returning vehicles in batches.
+     * Results come back in request order, the rental limit and pool size apply
+     * across the batch, and counters match the single-call path.
+     */
+    private void testBatchHireAndReturn() {
+        System.out.println("Test batch hire and return.");
+        VehicleManager manager = VehicleManager.getInstance();
+        resetManagerState();
+        for (int i = 0; i < 4; i++)
+            manager.addVehicle("Car");
+        Vehicle van = manager.addVehicle("Van");
+        Calendar cal = Calendar.getInstance();
+        cal.set(1982, Calendar.APRIL, 4);
+        CustomerRecord group = manager.addCustomerRecord("Batch", "Group", cal.getTime(), true);
+        CustomerRecord other = manager.addCustomerRecord("Batch", "Other", cal.getTime(), false);
+
+        List<HireResult> results = manager.hireVehicles(List.of(
+                new HireRequest(group, "Car", 2),
+                new HireRequest(group, VehicleType.VAN, 2),
+                new HireRequest(other, "Van", 2),
+                new HireRequest(group, "Car", 2),
+                new HireRequest(group, "Car", 2),
+                new HireRequest(other, "Car", 2),
+                new HireRequest(other, "Car", 2)));
+        Assertions.assertEquals(7, results.size());
+        Assertions.assertTrue(results.get(0).isSuccess());
+        Assertions.assertTrue(results.get(1).getVehicle() == van);
+        Assertions.assertEquals(HireStatus.NO_LICENCE, results.get(2).getStatus());
+        Assertions.assertTrue(results.get(3).isSuccess());
+        Assertions.assertEquals(HireStatus.RENTAL_LIMIT, results.get(4).getStatus());
+        Assertions.assertTrue(results.get(5).isSuccess());
+        Assertions.assertTrue(results.get(6).isSuccess());
+        Assertions.assertEquals(0, manager.noOfAvailableVehicles("Car"));
+        Assertions.assertEquals(0, manager.noOfAvailableVehicles("Van"));
+        Assertions.assertEquals(3, manager.getVechilesByCustomer(group).size());
+        Assertions.assertEquals(2, manager.getVechilesByCustomer(other).size());
+        Vehicle groupCar = results.get(0).getVehicle();
+
+        //the pool runs out part way through a batch
+        CustomerRecord late = manager.addCustomerRecord("Batch", "Late", cal.getTime(), true);
+        results = manager.hireVehicles(List.of(new HireRequest(late, "Car", 1)));
+        Assertions.assertEquals(HireStatus.NONE_AVAILABLE, results.get(0).getStatus());
+
+        List<ReturnStatus> returns = manager.returnVehicles(List.of(
+                new ReturnRequest(van.getVehicleID(), group, 100),
+                new ReturnRequest(groupCar.getVehicleID(), other, 100),
+                new ReturnRequest(groupCar.getVehicleID(), group, 100),
+                new ReturnRequest(groupCar.getVehicleID(), group, 100),
+                new ReturnRequest(VehicleID.getInstance("Van"), group, 100)));
+        Assertions.assertEquals(ReturnStatus.RETURNED, returns.get(0));
+        Assertions.assertEquals(ReturnStatus.NOT_HIRED_BY_CUSTOMER, returns.get(1));
+        Assertions.assertEquals(ReturnStatus.RETURNED, returns.get(2));
+        Assertions.assertEquals(ReturnStatus.NOT_HIRED_BY_CUSTOMER, returns.get(3));
+        Assertions.assertEquals(ReturnStatus.UNKNOWN_VEHICLE, returns.get(4));
+        Assertions.assertFalse(van.isHired());
+        Assertions.assertFalse(groupCar.isHired());
+        Assertions.assertEquals(100, van.getCurrentMileage());
+        Assertions.assertEquals(1, manager.noOfAvailableVehicles("Car"));
+        Assertions.assertEquals(1, manager.noOfAvailableVehicles("Van"));
+        Assertions.assertEquals(1, manager.getVechilesByCustomer(group).size());
+
+        //returned vehicles are hireable again
+        results = manager.hireVehicles(List.of(new HireRequest(late, "Car", 1), new HireRequest(late, "Van", 1)));
+        Assertions.assertTrue(results.get(0).getVehicle() == groupCar);
+        Assertions.assertTrue(results.get(1).getVehicle() == van);
+
+        try {
+            manager.hireVehicles(null);
+            Assertions.assertNotReached();
+        } catch (Throwable t) {
+            Assertions.assertExpectedThrowable(IllegalArgumentException.class, t);
+        }
+
+        System.out.println("Batch hire and return test passed.\n" + line);
+    }
+
+    /**
+     * Test the read views of hired vehicles: the snapshot is shared until the next
+     * hire or return, and the count and iteration match it.
+     */
+    private void testHiredViews() {
+        System.out.println("Test hired vehicle views.");
+        VehicleManager manager = VehicleManager.getInstance();
+        resetManagerState();
+        Vehicle car = manager.addVehicle("Car");
+        Vehicle van = manager.addVehicle("Van");
+        Calendar cal = Calendar.getInstance();
+        cal.set(1970, Calendar.AUGUST, 8);
+        CustomerRecord customer = manager.addCustomerRecord("View", "Reader", cal.getTime(), true);
+
+        Map<Integer, Set<Vehicle>> empty = manager.getHiredVehicles();
+        Assertions.assertTrue(empty.isEmpty());
+        Assertions.assertTrue(empty == manager.getHiredVehicles());
+        Assertions.assertEquals(0, manager.hiredCount());
+
+        Assertions.assertTrue(manager.hireVehicle(customer, "Car", 1));
+        Assertions.assertTrue(manager.hireVehicle(customer, "Van", 1));
+        Map<Integer, Set<Vehicle>> hired = manager.getHiredVehicles();
+        Assertions.assertFalse(hired == empty);
+        Assertions.assertTrue(hired == manager.getHiredVehicles());
+        Assertions.assertEquals(2, hired.get(customer.getCustomerNum()).size());
+        Assertions.assertEquals(2, manager.hiredCount());
+
+        Map<Vehicle, CustomerRecord> seen = new HashMap<>();
+        manager.forEachHire((c, v) -> seen.put(v, c));
+        Assertions.assertEquals(2, seen.size());
+        Assertions.assertEquals(customer, seen.get(car));
+        Assertions.assertEquals(customer, seen.get(van));
+
+        manager.returnVehicle(car.getVehicleID(), customer, 10);
+        Map<Integer, Set<Vehicle>> afterReturn = manager.getHiredVehicles();
+        Assertions.assertFalse(afterReturn == hired);
+        Assertions.assertEquals(1, afterReturn.get(customer.getCustomerNum()).size());
+        Assertions.assertEquals(2, hired.get(customer.getCustomerNum()).size()); // Old snapshot unchanged.
+        Assertions.assertEquals(1, manager.hiredCount());
+
+        System.out.println("Hired vehicle views test passed.\n" + line);
+    }
+
+    /**
+     * Test fleet snapshots: a snapshot does not change after later hires, and
+     * snapshots taken while other threads hire and return are always consistent.
+     */
+    private void testSnapshot() {
+        System.out.println("Test fleet snapshots.");
+        VehicleManager manager = VehicleManager.getInstance();
+        resetManagerState();
+        Vehicle car = manager.addVehicle("Car");
+        manager.addVehicle("Van");
+        Calendar cal = Calendar.getInstance();
+        cal.set(1979, Calendar.SEPTEMBER, 9);
+        CustomerRecord customer = manager.addCustomerRecord("Snap", "Shot", cal.getTime(), true);
+
+        FleetSnapshot before = manager.snapshot();
+        Assertions.assertEquals(before.getVersion(), manager.snapshot().getVersion());
+        Assertions.assertTrue(manager.hireVehicle(customer, "Car", 1));
+        FleetSnapshot after = manager.snapshot();
+        Assertions.assertTrue(after.getVersion() > before.getVersion());
+
+        Assertions.assertEquals(2, before.getAllVehicles().size());
+        Assertions.assertEquals(1, before.getCustomers().size());
+        Assertions.assertEquals(0, before.hiredCount());
+        Assertions.assertNull(before.getHirer(car.getVehicleID()));
+        Assertions.assertEquals(1, before.noOfAvailableVehicles(VehicleType.CAR));
+        Assertions.assertEquals(1, after.hiredCount());
+        Assertions.assertEquals(customer, after.getHirer(car.getVehicleID()));
+        Assertions.assertTrue(after.getHiredVehicles().get(customer.getCustomerNum()).contains(car));
+        Assertions.assertEquals(0, after.noOfAvailableVehicles(VehicleType.CAR));
+
+        //concurrent hires and returns never show up half done
+        resetManagerState();
+        for (int i = 0; i < 20; i++)
+            manager.addVehicle(i % 2 == 0 ? "Car" : "Van");
+        List<CustomerRecord> drivers = new ArrayList<>();
+        for (int i = 0; i < 8; i++)
+            drivers.add(manager.addCustomerRecord("Snap", "Driver" + i, cal.getTime(), true));
+        AtomicInteger stop = new AtomicInteger();
+        List<Thread> workers = new ArrayList<>();
+        for (CustomerRecord driver : drivers) {
+            Thread worker = new Thread(() -> {
+                while (stop.get() == 0) {
+                    if (manager.hireVehicle(driver, "Car", 1))
+                        for (Vehicle v : manager.getVechilesByCustomer(driver))
+                            manager.returnVehicle(v.getVehicleID(), driver, 1);
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        long lastVersion = -1;
+        for (int i = 0; i < 200; i++) {
+            FleetSnapshot snapshot = manager.snapshot();
+            Assertions.assertTrue(snapshot.getVersion() >= lastVersion);
+            lastVersion = snapshot.getVersion();
+            int hired = 0;
+            for (Set<Vehicle> set : snapshot.getHiredVehicles().values())
+                hired += set.size();
+            Assertions.assertEquals(snapshot.hiredCount(), hired);
+            Assertions.assertEquals(10, snapshot.noOfAvailableVehicles(VehicleType.CAR) + hired);
+            Assertions.assertEquals(10, snapshot.noOfAvailableVehicles(VehicleType.VAN));
+        }
+        stop.set(1);
+        for (Thread worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                throw new AssertionError("Interrupted while waiting for workers", e);
+            }
+        }
+        Assertions.assertEquals(0, manager.snapshot().hiredCount());
+
+        //on a large fleet under sustained writes the copies hold writers back, stay consistent and let them go on
+        resetManagerState();
+        int fleet = 50000;
+        List<VehicleID> added = new ArrayList<>();
+        for (int i = 0; i < fleet; i++)
+            added.add(manager.addVehicle("Car").getVehicleID());
+        AtomicInteger writes = new AtomicInteger();
+        stop.set(0);
+        workers.clear();
+        for (int i = 0; i < 8; i++) {
+            CustomerRecord driver = manager.addCustomerRecord("Busy", "Driver" + i, cal.getTime(), true);
+            Thread worker = new Thread(() -> {
+                while (stop.get() == 0) {
+                    if (manager.hireVehicle(driver, "Car", 1))
+                        for (Vehicle v : manager.getVechilesByCustomer(driver))
+                            manager.returnVehicle(v.getVehicleID(), driver, 1);
+                    writes.incrementAndGet();
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        Assertions.assertTrue(waitUntil(() -> writes.get() > 0));
+        long held = manager.getHeldCopyCount();
+        for (int i = 0; i < 20; i++) {
+            FleetSnapshot snapshot = manager.snapshot();
+            int hired = 0;
+            for (Set<Vehicle> set : snapshot.getHiredVehicles().values())
+                hired += set.size();
+            Assertions.assertEquals(snapshot.hiredCount(), hired);
+            Assertions.assertEquals(hired, snapshot.getTable().countHired(VehicleType.CAR));
+            Assertions.assertEquals(fleet, snapshot.noOfAvailableVehicles(VehicleType.CAR) + hired);
+        }
+        Assertions.assertTrue(manager.getHeldCopyCount() > held);
+        int afterCopies = writes.get();
+        Assertions.assertTrue(waitUntil(() -> writes.get() > afterCopies));
+        stop.set(1);
+        for (Thread worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                throw new AssertionError("Interrupted while waiting for workers", e);
+            }
+        }
+        Assertions.assertEquals(0, manager.snapshot().hiredCount());
+        resetManagerState();
+        for (VehicleID id : added) // No longer held by the manager.
+            VehicleID.release(id);
+
+        System.out.println("Fleet snapshots test passed.\n" + line);
+    }
+
+    /**
+     * Test that the journal records every change and that replaying it rebuilds
+     * the vehicles, customers and hires, ignoring a torn record at the end, and that
+     * a hire or return the journal refuses leaves the fleet as it was.
+     */
+    private void testJournal() {
+        System.out.println("Test journal replay.");
+        VehicleManager manager = VehicleManager.getInstance();
+        resetManagerState();
+        Path dir = null;
+        try {
+            dir = Files.createTempDirectory("fleet");
+            manager.openJournal(dir, Journal.SyncPolicy.COMMIT);
+            Vehicle car = manager.addVehicle("Car");
+            Vehicle spare = manager.addVehicle("Car");
+            Vehicle van = manager.addVehicle("Van");
+            Calendar cal = Calendar.getInstance();
+            cal.set(1981, Calendar.OCTOBER, 10);
+            CustomerRecord driver = manager.addCustomerRecord("Journal", "Driver", cal.getTime(), true);
+            CustomerRecord walkIn = CustomerRecord.getInstance("Journal", "WalkIn", cal.getTime(), false);
+
+            Assertions.assertTrue(manager.hireVehicle(driver, "Van", 12));
+            Assertions.assertTrue(manager.hireVehicle(driver, "Car", 1));
+            manager.returnVehicle(car.getVehicleID(), driver, 12000);
+            Assertions.assertTrue(manager.hireVehicle(walkIn, "Car", 1));
+            Assertions.assertTrue(spare.isHired());
+            manager.closeJournal();
+
+            resetManagerState();
+            Assertions.assertEquals(0, manager.getAllVehicles().size());
+            manager.openJournal(dir, Journal.SyncPolicy.NONE);
+            Assertions.assertEquals(3, manager.getAllVehicles().size());
+            Assertions.assertEquals(car.getVehicleID(), manager.getAllVehicles().get(0).getVehicleID());
+            Assertions.assertEquals(1, manager.getCustomers().size());
+            Assertions.assertEquals(driver, manager.getCustomerByNumber(driver.getCustomerNum()));
+
+            Vehicle replayedVan = manager.getVehicle(van.getVehicleID());
+            Vehicle replayedCar = manager.getVehicle(car.getVehicleID());
+            Assertions.assertTrue(replayedVan.isHired());
+            Assertions.assertTrue(((Van) replayedVan).needCheck());
+            Assertions.assertEquals(driver, manager.getHirer(van.getVehicleID()));
+            Assertions.assertEquals(walkIn, manager.getHirer(spare.getVehicleID()));
+            Assertions.assertEquals(0, replayedCar.getCurrentMileage()); // Serviced on return.
+            Assertions.assertFalse(replayedCar.isHired());
+            Assertions.assertEquals(2, manager.hiredCount());
+            Assertions.assertEquals(1, manager.noOfAvailableVehicles("Car"));
+            Assertions.assertEquals(0, manager.noOfAvailableVehicles("Van"));
+            Assertions.assertTrue(VehicleID.isIssued(spare.getVehicleID()));
+
+            //changes after replay are appended, and a torn record at the end is dropped
+            manager.returnVehicle(van.getVehicleID(), driver, 100);
+            manager.closeJournal();
+            List<Path> segments = journalSegments(dir);
+            Path file = segments.get(segments.size() - 1);
+            long size = Files.size(file);
+            Files.write(file, new byte[]{0, 0, 0, 40, 1, 2, 3}, StandardOpenOption.APPEND);
+            resetManagerState();
+            manager.openJournal(dir, Journal.SyncPolicy.INTERVAL);
+            Assertions.assertEquals(size, Files.size(file));
+            replayedVan = manager.getVehicle(van.getVehicleID());
+            Assertions.assertFalse(replayedVan.isHired());
+            Assertions.assertFalse(((Van) replayedVan).needCheck());
+            Assertions.assertEquals(100, replayedVan.getCurrentMileage());
+            Assertions.assertEquals(1, manager.hiredCount());
+
+            //a hire or return the journal refuses leaves the fleet as it was
+            Field journal = VehicleManager.class.getDeclaredField("journal");
+            journal.setAccessible(true);
+            ((Journal) journal.get(manager)).close();
+            replayedCar = manager.getVehicle(car.getVehicleID());
+            try {
+                manager.hire(driver, "Car", 1);
+                Assertions.assertNotReached();
+            } catch (Throwable t) {
+                Assertions.assertExpectedThrowable(IllegalStateException.class, t);
+            }
+            try {
+                manager.hireVehicles(List.of(new HireRequest(driver, "Car", 1), new HireRequest(driver, "Van", 1)));
+                Assertions.assertNotReached();
+            } catch (Throwable t) {
+                Assertions.assertExpectedThrowable(IllegalStateException.class, t);
+            }
+            Assertions.assertFalse(replayedCar.isHired());
+            Assertions.assertFalse(replayedVan.isHired());
+            Assertions.assertEquals(1, manager.noOfAvailableVehicles("Car"));
+            Assertions.assertEquals(1, manager.noOfAvailableVehicles("Van"));
+            Vehicle replayedSpare = manager.getVehicle(spare.getVehicleID());
+            try {
+                manager.returnVehicle(spare.getVehicleID(), walkIn, 50);
+                Assertions.assertNotReached();
+            } catch (Throwable t) {
+                Assertions.assertExpectedThrowable(IllegalStateException.class, t);
+            }
+            try {
+                manager.returnVehicles(List.of(new ReturnRequest(spare.getVehicleID(), walkIn, 50)));
+                Assertions.assertNotReached();
+            } catch (Throwable t) {
+                Assertions.assertExpectedThrowable(IllegalStateException.class, t);
+            }
+            Assertions.assertTrue(replayedSpare.isHired());
+            Assertions.assertEquals(walkIn, manager.getHirer(spare.getVehicleID()));
+            Assertions.assertEquals(0, replayedSpare.getCurrentMileage());
+            Assertions.assertEquals(1, manager.hiredCount());
+            manager.closeJournal();
+            Assertions.assertTrue(manager.hire(driver, "Car", 1).getVehicle() == replayedCar);
+            Assertions.assertEquals(ReturnStatus.RETURNED, manager.returnVehicle(spare.getVehicleID(), walkIn, 50));
+            Assertions.assertEquals(1, manager.noOfAvailableVehicles("Car"));
+
+            //opening a journal into a manager that is in use is refused
+            try {
+                manager.openJournal(dir, Journal.SyncPolicy.NONE);
+                Assertions.assertNotReached();
+            } catch (Throwable t) {
+                Assertions.assertExpectedThrowable(IllegalStateException.class, t);
+            }
+
+            //a segment larger than the replay read window is read in full
+            resetManagerState();
+            deleteDirectory(dir);
+            dir = Files.createTempDirectory("fleet");
+            manager.openJournal(dir, Journal.SyncPolicy.NONE);
+            List<VehicleID> added = new ArrayList<>();
+            for (int i = 0; i < 15000; i++)
+                added.add(manager.addVehicle(i % 2 == 0 ? "Car" : "Van").getVehicleID());
+            manager.closeJournal();
+            Assertions.assertEquals(1, journalSegments(dir).size());
+            Assertions.assertTrue(Files.size(journalSegments(dir).get(0)) > 1 << 18);
+            resetManagerState();
+            manager.openJournal(dir, Journal.SyncPolicy.NONE);
+            Assertions.assertEquals(15000, manager.getAllVehicles().size());
+            Assertions.assertEquals(added.get(14999), manager.getAllVehicles().get(14999).getVehicleID());
+            manager.closeJournal();
+            resetManagerState();
+            for (VehicleID id : added) // No longer held by the manager.
+                VehicleID.release(id);
+        } catch (IOException e) {
+            throw new AssertionError("Journal I/O failed", e);
+        } catch (ReflectiveOperationException e) {
+            throw new AssertionError("Journal field not found", e);
+        } finally {
+            resetManagerState();
+            deleteDirectory(dir);
+        }
+
+        System.out.println("Journal replay test passed.\n" + line);
+    }
+
+    /**
+     * Test that a checkpoint restores the fleet with only the later journal records
+     * replayed, and that the segments and checkpoints it covers are deleted.
+     */
+    private void testCheckpoint() {
+        System.out.println("Test checkpoints.");
+        VehicleManager manager = VehicleManager.getInstance();
+        resetManagerState();
+        Path dir = null;
+        try {
+            dir = Files.createTempDirectory("fleet");
+            manager.openJournal(dir, Journal.SyncPolicy.NONE);
+            List<Vehicle> cars = new ArrayList<>();
+            for (int i = 0; i < 5; i++)
+                cars.add(manager.addVehicle("Car"));
+            Vehicle van = manager.addVehicle("Van");
+            Calendar cal = Calendar.getInstance();
+            cal.set(1979, Calendar.MAY, 3);
+            CustomerRecord driver = manager.addCustomerRecord("Checkpoint", "Driver", cal.getTime(), true);
+            CustomerRecord walkIn = CustomerRecord.getInstance("Checkpoint", "WalkIn", cal.getTime(), false);
+            Assertions.assertTrue(manager.hireVehicle(driver, "Van", 5));
+            Assertions.assertTrue(manager.hireVehicle(walkIn, "Car", 2));
+            manager.returnVehicle(van.getVehicleID(), driver, 400); // Checked on return.
+            Assertions.assertTrue(manager.hireVehicle(driver, "Car", 3));
+
+            long lsn = manager.checkpoint();
+            Assertions.assertTrue(lsn > 0);
+            Assertions.assertEquals(1, journalSegments(dir).size());
+            manager.checkpoint(); // Replaces the first checkpoint.
+
+            //changes after the checkpoint are replayed from the journal
+            Vehicle walkInCar = manager.getHiredVehicles().get(walkIn.getCustomerNum()).iterator().next();
+            manager.returnVehicle(walkInCar.getVehicleID(), walkIn, 12000); // Due a service.
+            manager.closeJournal();
+
+            resetManagerState();
+            RecoveryStats stats = manager.openJournal(dir, Journal.SyncPolicy.NONE);
+            Assertions.assertEquals(lsn, stats.checkpointLsn());
+            Assertions.assertEquals(6, stats.vehicles());
+            Assertions.assertEquals(1, stats.customers());
+            Assertions.assertEquals(2L, stats.replayedRecords()); // The return and its service.
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "checkpoint-*")) {
+                int count = 0;
+                for (Path ignored : files)
+                    count++;
+                Assertions.assertEquals(1, count);
+            }
+
+            Vehicle restoredVan = manager.getVehicle(van.getVehicleID());
+            Assertions.assertFalse(restoredVan.isHired());
+            Assertions.assertFalse(((Van) restoredVan).needCheck());
+            Assertions.assertEquals(400, restoredVan.getCurrentMileage());
+            Assertions.assertEquals(1, manager.hiredCount());
+            Assertions.assertNull(manager.getHirer(walkInCar.getVehicleID()));
+            Assertions.assertEquals(0, manager.getVehicle(walkInCar.getVehicleID()).getCurrentMileage());
+            Assertions.assertEquals(4, manager.noOfAvailableVehicles("Car"));
+            Assertions.assertEquals(1, manager.noOfAvailableVehicles("Van"));
+            Assertions.assertEquals(driver, manager.getCustomerByNumber(driver.getCustomerNum()));
+            for (Vehicle car : cars)
+                Assertions.assertTrue(VehicleID.isIssued(car.getVehicleID()));
+
+            //the restored manager keeps hiring and journaling
+            Assertions.assertTrue(manager.hireVehicle(driver, "Car", 1));
+            Assertions.assertEquals(2, manager.hiredCount());
+        } catch (IOException e) {
+            throw new AssertionError("Checkpoint I/O failed", e);
+        } finally {
+            resetManagerState();
+            deleteDirectory(dir);
+        }
+
+        System.out.println("Checkpoints test passed.\n" + line);
+    }
+
+    /**
+     * Test that vehicles kept in a mapped store can be hired and returned, and that
+     * reopening the store restores them with their mileage and inspection flags.
+     */
+    private void testVehicleStore() {
+        System.out.println("Test vehicle store.");
+        VehicleManager manager = VehicleManager.getInstance();
+        resetManagerState();
+        Path dir = null;
+        try {
+            dir = Files.createTempDirectory("fleet");
+            Path file = dir.resolve("vehicles.store");
+            Assertions.assertEquals(0, manager.openStore(file, 4));
+            Vehicle car = manager.addVehicle("Car");
+            Vehicle van = manager.addVehicle("Van");
+            Vehicle spare = manager.addVehicle("Car");
+            Calendar cal = Calendar.getInstance();
+            cal.set(1985, Calendar.MARCH, 9);
+            CustomerRecord driver = manager.addCustomerRecord("Store", "Driver", cal.getTime(), true);
+
+            Assertions.assertTrue(manager.hireVehicle(driver, "Car", 1));
+            Assertions.assertTrue(car.isHired());
+            manager.returnVehicle(car.getVehicleID(), driver, 3000);
+            Assertions.assertEquals(3000, car.getCurrentMileage());
+            Assertions.assertTrue(manager.hireVehicle(driver, "Van", 12));
+            Assertions.assertTrue(((Van) van).needCheck());
+            Assertions.assertTrue(manager.hireVehicle(driver, "Car", 1)); // Still hired at close.
+
+            //a full store refuses new vehicles without using up an ID
+            manager.addVehicle("Van");
+            try {
+                manager.addVehicle("Car");
+                Assertions.assertNotReached();
+            } catch (Throwable t) {
+                Assertions.assertExpectedThrowable(IllegalStateException.class, t);
+            }
+            Assertions.assertEquals(4, manager.getAllVehicles().size());
+
+            //a store and a journal cannot be open together
+            try {
+                manager.openJournal(dir, Journal.SyncPolicy.NONE);
+                Assertions.assertNotReached();
+            } catch (Throwable t) {
+                Assertions.assertExpectedThrowable(IllegalStateException.class, t);
+            }
+            manager.closeStore();
+
+            resetManagerState();
+            Assertions.assertEquals(4, manager.openStore(file, 100));
+            Assertions.assertEquals(4, manager.getVehicleStore().capacity());
+            Assertions.assertEquals(car.getVehicleID(), manager.getAllVehicles().get(0).getVehicleID());
+            Vehicle storedCar = manager.getVehicle(car.getVehicleID());
+            Vehicle storedVan = manager.getVehicle(van.getVehicleID());
+            Vehicle storedSpare = manager.getVehicle(spare.getVehicleID());
+            Assertions.assertEquals(3000, storedCar.getCurrentMileage());
+            Assertions.assertEquals(storedCar.getType().getServiceDistance(), storedCar.getDistanceRequirement());
+            Assertions.assertFalse(storedVan.isHired()); // Hires are not stored.
+            Assertions.assertFalse(((Van) storedVan).needCheck()); // Cleared as on a return.
+            Assertions.assertFalse(storedSpare.isHired());
+            Assertions.assertTrue(VehicleID.isIssued(spare.getVehicleID()));
+            Assertions.assertEquals(2, manager.noOfAvailableVehicles("Car"));
+            Assertions.assertEquals(2, manager.noOfAvailableVehicles("Van"));
+
+            //restored vehicles are hired through the store
+            Assertions.assertTrue(manager.hireVehicle(driver, "Van", 1));
+            Assertions.assertEquals(1, manager.hiredCount());
+            Assertions.assertEquals(1, manager.fleetTable().countHired(VehicleType.VAN)); // Read from the store's records.
+            Assertions.assertEquals(3000L, manager.fleetTable().totalMileage(VehicleType.CAR));
+        } catch (IOException e) {
+            throw new AssertionError("Vehicle store I/O failed", e);
+        } finally {
+            resetManagerState();
+            deleteDirectory(dir);
+        }
+
+        System.out.println("Vehicle store test passed.\n" + line);
+    }
+
+    /**
+     * Test that the fleet table's aggregates match the fleet, and that the
+     * parallel path gives the same answers as the single-threaded one.
+     */
+    private void testFleetTable() {
+        System.out.println("Test fleet table.");
+        VehicleManager manager = VehicleManager.getInstance();
+        resetManagerState();
+        List<Vehicle> cars = new ArrayList<>();
+        for (int i = 0; i < 4; i++)
+            cars.add(manager.addVehicle("Car"));
+        Vehicle van = manager.addVehicle("Van");
+        cars.get(0).setCurrentMileage(8000);
+        cars.get(1).setCurrentMileage(7999);
+        cars.get(2).setCurrentMileage(2500);
+        Calendar cal = Calendar.getInstance();
+        cal.set(1988, Calendar.JULY, 21);
+        CustomerRecord driver = manager.addCustomerRecord("Table", "Driver", cal.getTime(), true);
+        Assertions.assertTrue(manager.hireVehicle(driver, "Van", 12));
+        van.setCurrentMileage(600);
+
+        FleetTable table = manager.fleetTable();
+        int carDistance = VehicleType.CAR.getServiceDistance();
+        Assertions.assertEquals(5, table.size());
+        Assertions.assertEquals(4, table.count(VehicleType.CAR));
+        Assertions.assertEquals(1, table.countHired(VehicleType.VAN));
+        Assertions.assertEquals(1, table.countNeedingCheck());
+        Assertions.assertEquals(4, table.countAtServiceFraction(VehicleType.CAR, 0));
+        Assertions.assertEquals((8000 >= carDistance * 0.8 ? 1 : 0) + (7999 >= carDistance * 0.8 ? 1 : 0),
+                table.countAtServiceFraction(VehicleType.CAR, 0.8));
+        Assertions.assertEquals(18499L, table.totalMileage(VehicleType.CAR));
+        Assertions.assertEquals(0L, table.totalHiredMileage(VehicleType.CAR));
+        Assertions.assertEquals(600L, table.totalHiredMileage(VehicleType.VAN));
+        Assertions.assertEquals(18499.0 / 4, table.averageMileage(VehicleType.CAR));
+        Assertions.assertTrue(manager.snapshot().getTable() != table); // Each snapshot has its own table.
+        FleetTable fromSnapshot = manager.snapshot().getTable();
+        for (VehicleType type : VehicleType.values()) {
+            Assertions.assertEquals(fromSnapshot.count(type), table.count(type));
+            Assertions.assertEquals(fromSnapshot.countHired(type), table.countHired(type));
+            Assertions.assertEquals(fromSnapshot.totalMileage(type), table.totalMileage(type));
+        }
+
+        //the table follows later changes to the fleet
+        manager.returnVehicle(van.getVehicleID(), driver, 100);
+        Assertions.assertEquals(0, manager.fleetTable().countHired(VehicleType.VAN));
+        Assertions.assertEquals(700L, manager.fleetTable().totalMileage(VehicleType.VAN));
+
+        //a table large enough to be split gives the same answers in parallel
+        int rows = 70000;
+        List<Vehicle> many = new ArrayList<>(rows);
+        long[] states = new long[rows];
+        for (int i = 0; i < rows; i++) {
+            many.add(i % 3 == 0 ? new Van() : new Car());
+            states[i] = VehicleState.pack(i % 12000, i % 5 == 0, i % 7 == 0);
+        }
+        try {
+            FleetTable serial = new FleetTable(many, states);
+            FleetTable parallel = serial.parallel();
+            for (VehicleType type : VehicleType.values()) {
+                Assertions.assertEquals(serial.count(type), parallel.count(type));
+                Assertions.assertEquals(serial.countHired(type), parallel.countHired(type));
+                Assertions.assertEquals(serial.countAtServiceFraction(type, 0.8), parallel.countAtServiceFraction(type, 0.8));
+                Assertions.assertEquals(serial.totalMileage(type), parallel.totalMileage(type));
+                Assertions.assertEquals(serial.totalHiredMileage(type), parallel.totalHiredMileage(type));
+            }
+            long hiredCarMileage = 0;
+            for (int i = 0; i < rows; i++)
+                if (many.get(i).getType() == VehicleType.CAR && VehicleState.isHired(states[i]))
+                    hiredCarMileage += VehicleState.mileage(states[i]);
+            Assertions.assertEquals(hiredCarMileage, parallel.totalHiredMileage(VehicleType.CAR));
+
+            try {
+                serial.countAtServiceFraction(VehicleType.CAR, -0.5);
+                Assertions.assertNotReached();
+            } catch (Throwable t) {
+                Assertions.assertExpectedThrowable(IllegalArgumentException.class, t);
+            }
+        } finally {
+            resetManagerState();
+            for (Vehicle v : many) // No longer held by the manager.
+                VehicleID.release(v.getVehicleID());
+        }
+
+        System.out.println("Fleet table test passed.\n" + line);
+    }
+
+    /**
+     * Test that with scheduled maintenance, a due vehicle stays out of the hire pool
+     * after its return, is listed as due, and is hireable again once serviced.
+     */
+    private void testScheduledMaintenance() {
+        System.out.println("Test scheduled maintenance.");
+        VehicleManager manager = VehicleManager.getInstance();
+        resetManagerState();
+        try {
+            manager.nextDueForService(1);
+            Assertions.assertNotReached();
+        } catch (Throwable t) {
+            Assertions.assertExpectedThrowable(IllegalStateException.class, t);
+        }
+
+        Vehicle first = manager.addVehicle("Car");
+        manager.setScheduledMaintenance(true);
+        Vehicle second = manager.addVehicle("Car"); // Added after enabling; still scheduled.
+        Vehicle third = manager.addVehicle("Car");
+        Assertions.assertEquals(3, manager.getMaintenanceScheduler().size());
+        Calendar cal = Calendar.getInstance();
+        cal.set(1983, Calendar.JANUARY, 30);
+        CustomerRecord driver = manager.addCustomerRecord("Service", "Driver", cal.getTime(), true);
+        int distance = VehicleType.CAR.getServiceDistance();
+
+        Assertions.assertTrue(manager.hireVehicle(driver, "Car", 1));
+        manager.returnVehicle(first.getVehicleID(), driver, distance + 50);
+        Assertions.assertTrue(manager.hireVehicle(driver, "Car", 1));
+        manager.returnVehicle(second.getVehicleID(), driver, distance);
+        Assertions.assertTrue(manager.hireVehicle(driver, "Car", 1));
+        manager.returnVehicle(third.getVehicleID(), driver, 100);
+
+        //due vehicles are not serviced on return and cannot be hired
+        Assertions.assertEquals(distance + 50, first.getCurrentMileage());
+        Assertions.assertEquals(Arrays.asList(first, second), manager.nextDueForService(5));
+        Assertions.assertEquals(Arrays.asList(first), manager.nextDueForService(1));
+        Assertions.assertEquals(Arrays.asList(first, second, third), manager.getMaintenanceScheduler().next(3));
+        Assertions.assertTrue(manager.hireVehicle(driver, "Car", 1));
+        Assertions.assertTrue(third.isHired());
+        Assertions.assertFalse(manager.hireVehicle(driver, "Car", 1));
+        Assertions.assertFalse(manager.recordService(third.getVehicleID())); // Hired.
+
+        //recording a service puts the vehicle back into the pool
+        Assertions.assertTrue(manager.recordService(first.getVehicleID()));
+        Assertions.assertFalse(manager.recordService(first.getVehicleID())); // No longer due.
+        Assertions.assertEquals(0, first.getCurrentMileage());
+        Assertions.assertEquals(Arrays.asList(second), manager.nextDueForService(5));
+        Assertions.assertTrue(manager.hireVehicle(driver, "Car", 1));
+        Assertions.assertTrue(first.isHired());
+
+        //turning it off services the vehicles still waiting, and services on return again
+        manager.setScheduledMaintenance(false);
+        Assertions.assertNull(manager.getMaintenanceScheduler());
+        Assertions.assertEquals(0, second.getCurrentMileage());
+        Assertions.assertFalse(manager.recordService(second.getVehicleID())); // Already serviced.
+        Assertions.assertEquals(1, manager.noOfAvailableVehicles("Car"));
+        Assertions.assertTrue(manager.hireVehicle(driver, "Car", 1));
+        Assertions.assertTrue(second.isHired());
+        manager.returnVehicle(first.getVehicleID(), driver, distance);
+        Assertions.assertEquals(0, first.getCurrentMileage());
+        manager.returnVehicle(second.getVehicleID(), driver, 10);
+        Assertions.assertEquals(2, manager.noOfAvailableVehicles("Car"));
+        resetManagerState();
+
+        System.out.println("Scheduled maintenance test passed.\n" + line);
+    }
+
+    /**
+     * Test that while inspections run, returned vans wait out of the hire pool until
+     * an inspector passes them, failed inspections are retried, and stopping the
+     * workers clears the vans still waiting.
+     */
+    private void testInspectionQueue() {
+        System.out.println("Test van inspection queue.");
+        VehicleManager manager = VehicleManager.getInstance();
+        resetManagerState();
+        Van first = (Van) manager.addVehicle("Van");
+        Van second = (Van) manager.addVehicle("Van");
+        Calendar cal = Calendar.getInstance();
+        cal.set(1976, Calendar.APRIL, 2);
+        CustomerRecord driver = manager.addCustomerRecord("Inspection", "Driver", cal.getTime(), true);
+        CountDownLatch passed = new CountDownLatch(1);
+        AtomicInteger attempts = new AtomicInteger();
+        InspectionQueue queue = manager.startInspections(1, van -> {
+            if (attempts.getAndIncrement() == 0)
+                throw new Exception("Inspector unavailable");
+            passed.await();
+        });
+        Assertions.assertTrue(manager.getInspectionQueue() == queue);
+
+        Assertions.assertTrue(manager.hireVehicle(driver, "Van", 12));
+        Assertions.assertTrue(manager.hireVehicle(driver, "Van", 12));
+        manager.returnVehicle(first.getVehicleID(), driver, 100);
+        manager.returnVehicle(second.getVehicleID(), driver, 100);
+
+        //flagged vans wait for an inspector and cannot be hired
+        Assertions.assertTrue(waitUntil(() -> queue.stats().inProgress() == 1 && queue.stats().failed() == 1));
+        Assertions.assertEquals(1, queue.stats().queued());
+        Assertions.assertTrue(first.needCheck() && second.needCheck());
+        Assertions.assertEquals(2, manager.noOfAvailableVehicles("Van"));
+        Assertions.assertFalse(manager.hireVehicle(driver, "Van", 1));
+
+        //passed vans are cleared and can be hired again
+        passed.countDown();
+        Assertions.assertTrue(waitUntil(() -> queue.stats().completed() == 2));
+        InspectionStats stats = queue.stats();
+        Assertions.assertEquals(0, stats.queued());
+        Assertions.assertEquals(1L, stats.failed());
+        Assertions.assertTrue(stats.maxInspectionNanos() > 0 && stats.averageInspectionMillis() >= 0);
+        Assertions.assertFalse(first.needCheck() || second.needCheck());
+        Assertions.assertTrue(manager.hireVehicle(driver, "Van", 12));
+
+        //stopping clears vans still waiting, including one being inspected
+        manager.stopInspections();
+        CountDownLatch never = new CountDownLatch(1);
+        manager.startInspections(1, van -> never.await());
+        Vehicle hired = manager.getVechilesByCustomer(driver).iterator().next();
+        manager.returnVehicle(hired.getVehicleID(), driver, 100);
+        Assertions.assertTrue(((Van) hired).needCheck());
+        Assertions.assertEquals(1, manager.stopInspections());
+        Assertions.assertNull(manager.getInspectionQueue());
+        Assertions.assertFalse(((Van) hired).needCheck());
+
+        //without inspections, returns clear the flag as before
+        Assertions.assertTrue(manager.hireVehicle(driver, "Van", 12));
+        Vehicle again = manager.getVechilesByCustomer(driver).iterator().next();
+        manager.returnVehicle(again.getVehicleID(), driver, 100);
+        Assertions.assertFalse(((Van) again).needCheck());
+
+        try {
+            manager.startInspections(0, van -> { });
+            Assertions.assertNotReached();
+        } catch (Throwable t) {
+            Assertions.assertExpectedThrowable(IllegalArgumentException.class, t);
+        }
+        resetManagerState();
+
+        //a van that cannot be handed back is counted and queued again, and the worker keeps running
+        AtomicInteger handBacks = new AtomicInteger();
+        List<Van> handedBack = new CopyOnWriteArrayList<>();
+        InspectionQueue direct = new InspectionQueue(1, Thread::new, van -> { }, van -> {
+            if (handBacks.getAndIncrement() == 0)
+                throw new IllegalStateException("Journal is closed.");
+            handedBack.add(van);
+        });
+        Van stuck = new Van();
+        Van next = new Van();
+        Assertions.assertTrue(direct.submit(stuck));
+        Assertions.assertTrue(waitUntil(() -> handedBack.contains(stuck)));
+        Assertions.assertTrue(direct.submit(next));
+        Assertions.assertTrue(waitUntil(() -> handedBack.contains(next)));
+        stats = direct.stats();
+        Assertions.assertEquals(1L, stats.failed());
+        Assertions.assertEquals(2L, stats.completed());
+        Assertions.assertEquals(0, direct.close().size());
+
+        System.out.println("Van inspection queue test passed.\n" + line);
+    }
+
+    /**
+     * Test that a hire records its start and due times, that a hire still out after
+     * its due time is flagged once as overdue, that returning it clears it, and that
+     * the times survive journal replay.
+     */
+    private void testHireRecords() {
+        System.out.println("Test hire records and overdue hires.");
+        VehicleManager manager = VehicleManager.getInstance();
+        resetManagerState();
+        Vehicle car = manager.addVehicle("Car");
+        Vehicle van = manager.addVehicle("Van");
+        Calendar cal = Calendar.getInstance();
+        cal.set(1983, Calendar.JULY, 14);
+        CustomerRecord driver = manager.addCustomerRecord("Overdue", "Driver", cal.getTime(), true);
+
+        long before = System.currentTimeMillis();
+        Assertions.assertTrue(manager.hireVehicle(driver, "Car", 2));
+        Assertions.assertTrue(manager.hireVehicle(driver, "Van", 5));
+        HireRecord carHire = manager.getHireRecord(car.getVehicleID());
+        HireRecord vanHire = manager.getHireRecord(van.getVehicleID());
+        Assertions.assertEquals(driver, carHire.getCustomer());
+        Assertions.assertTrue(carHire.getVehicle() == car);
+        Assertions.assertTrue(carHire.getStartMillis() >= before);
+        Assertions.assertEquals(carHire.getStartMillis() + TimeUnit.DAYS.toMillis(2), carHire.getDueMillis());
+        Assertions.assertEquals(vanHire.getStartMillis() + TimeUnit.DAYS.toMillis(5), vanHire.getDueMillis());
+        Assertions.assertTrue(manager.snapshot().getHireRecord(car.getVehicleID()) == carHire);
+
+        //nothing is overdue before its due time, and each hire is flagged once after it
+        Assertions.assertEquals(0, manager.checkOverdue(carHire.getDueMillis() - 2000));
+        Assertions.assertFalse(carHire.isOverdue());
+        Assertions.assertEquals(1, manager.checkOverdue(carHire.getDueMillis() + 2000));
+        Assertions.assertTrue(carHire.isOverdue());
+        Assertions.assertFalse(vanHire.isOverdue());
+        Assertions.assertEquals(0, manager.checkOverdue(carHire.getDueMillis() + 4000));
+        Assertions.assertEquals(1, manager.checkOverdue(vanHire.getDueMillis() + 2000));
+        Assertions.assertEquals(List.of(carHire, vanHire), manager.getOverdueHires());
+
+        //a returned hire is dropped, and one returned before its due time is never flagged
+        manager.returnVehicle(car.getVehicleID(), driver, 50);
+        Assertions.assertTrue(manager.getHireRecord(car.getVehicleID()) == null);
+        Assertions.assertEquals(List.of(vanHire), manager.getOverdueHires());
+        Assertions.assertTrue(manager.hireVehicle(driver, "Car", 1));
+        HireRecord again = manager.getHireRecord(car.getVehicleID());
+        manager.returnVehicle(car.getVehicleID(), driver, 50);
+        Assertions.assertEquals(0, manager.checkOverdue(again.getDueMillis() + TimeUnit.DAYS.toMillis(1)));
+        Assertions.assertFalse(again.isOverdue());
+
+        try {
+            manager.startOverdueChecks(0, TimeUnit.SECONDS);
+            Assertions.assertNotReached();
+        } catch (Throwable t) {
+            Assertions.assertExpectedThrowable(IllegalArgumentException.class, t);
+        }
+
+        //hires and returns never wait for the wheel, even while a check holds it
+        CountDownLatch held = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+        ExecutorService hirer = Executors.newSingleThreadExecutor();
+        try {
+            Field wheelField = VehicleManager.class.getDeclaredField("dueTimes");
+            wheelField.setAccessible(true);
+            Field lockField = TimingWheel.class.getDeclaredField("lock");
+            lockField.setAccessible(true);
+            ReentrantLock wheelLock = (ReentrantLock) lockField.get(wheelField.get(manager));
+            Thread holder = new Thread(() -> {
+                wheelLock.lock();
+                try {
+                    held.countDown();
+                    done.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    wheelLock.unlock();
+                }
+            });
+            holder.start();
+            held.await();
+            CustomerRecord hiring = driver;
+            VehicleID carID = car.getVehicleID();
+            Future<HireRecord> last = hirer.submit(() -> {
+                for (int i = 0; i < 1000; i++) { // Enough queued timers to try to apply them.
+                    Assertions.assertTrue(manager.hireVehicle(hiring, "Car", 1));
+                    manager.returnVehicle(carID, hiring, 1);
+                }
+                Assertions.assertTrue(manager.hireVehicle(hiring, "Car", 1));
+                return manager.getHireRecord(carID);
+            });
+            HireRecord stillOut = last.get(10, TimeUnit.SECONDS);
+            done.countDown();
+            holder.join();
+            Assertions.assertEquals(1, manager.checkOverdue(vanHire.getDueMillis() + TimeUnit.DAYS.toMillis(1)));
+            Assertions.assertTrue(stillOut.isOverdue());
+            Assertions.assertEquals(List.of(stillOut, vanHire), manager.getOverdueHires()); // Earliest due first.
+        } catch (TimeoutException e) {
+            throw new AssertionError("Hires waited for the timing wheel", e);
+        } catch (ExecutionException e) {
+            throw new AssertionError("Hire while the wheel was held failed", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AssertionError("Interrupted", e);
+        } catch (ReflectiveOperationException e) {
+            throw new AssertionError("Timing wheel field not found", e);
+        } finally {
+            done.countDown();
+            hirer.shutdownNow();
+        }
+
+        //start and due times survive journal replay
+        resetManagerState();
+        Path dir = null;
+        try {
+            dir = Files.createTempDirectory("fleet");
+            manager.openJournal(dir, Journal.SyncPolicy.COMMIT);
+            car = manager.addVehicle("Car");
+            driver = manager.addCustomerRecord("Overdue", "Driver", cal.getTime(), true);
+            Assertions.assertTrue(manager.hireVehicle(driver, "Car", 3));
+            carHire = manager.getHireRecord(car.getVehicleID());
+            manager.closeJournal();
+
+            resetManagerState();
+            manager.openJournal(dir, Journal.SyncPolicy.NONE);
+            HireRecord replayed = manager.getHireRecord(car.getVehicleID());
+            Assertions.assertEquals(carHire.getStartMillis(), replayed.getStartMillis());
+            Assertions.assertEquals(carHire.getDueMillis(), replayed.getDueMillis());
+            Assertions.assertEquals(1, manager.checkOverdue(replayed.getDueMillis() + 2000));
+            Assertions.assertTrue(replayed.isOverdue());
+            manager.closeJournal();
+        } catch (IOException e) {
+            throw new AssertionError("Journal I/O failed", e);
+        } finally {
+            resetManagerState();
+            deleteDirectory(dir);
+        }
+
+        System.out.println("Hire records test passed.\n" + line);
+    }
+
+    /**
+     * Waits up to five seconds for a condition to hold.
+     *
+     * @param condition The condition.
+     * @return True if the condition held in time, false otherwise.
+     */
+    private static boolean waitUntil(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline)
+                return false;
+            Thread.onSpinWait();
+        }
+        return true;
+    }
+
+    /**
+     * Test that retiring a vehicle takes it out of the fleet, survives journal
+     * replay and a reopened store, and frees its ID to be issued again.
+     */
+    private void testRetireVehicle() {
+        System.out.println("Test retiring vehicles.");
+        VehicleManager manager = VehicleManager.getInstance();
+        resetManagerState();
+        Path dir = null;
+        try {
+            dir = Files.createTempDirectory("fleet");
+            manager.openJournal(dir, Journal.SyncPolicy.COMMIT);
+            Vehicle car = manager.addVehicle("Car");
+            Vehicle van = manager.addVehicle("Van");
+            Vehicle spare = manager.addVehicle("Car");
+            VehicleID carID = car.getVehicleID();
+            Calendar cal = Calendar.getInstance();
+            cal.set(1979, Calendar.MAY, 2);
+            CustomerRecord driver = manager.addCustomerRecord("Retire", "Driver", cal.getTime(), true);
+            Assertions.assertTrue(manager.hireVehicle(driver, "Van", 1));
+
+            //a hired vehicle cannot be retired, an available one leaves the fleet and frees its ID
+            List<VehicleID> taken = new ArrayList<>();
+            Vehicle reissued;
+            try {
+                try {
+                    while (true)
+                        taken.add(VehicleID.getInstance(VehicleType.CAR));
+                } catch (IllegalStateException e) {
+                    // Every car ID is issued.
+                }
+                Assertions.assertFalse(manager.retireVehicle(van.getVehicleID()));
+                Assertions.assertTrue(manager.retireVehicle(carID));
+                Assertions.assertTrue(manager.getVehicle(carID) == null);
+                Assertions.assertFalse(manager.getAllVehicles().contains(car));
+                Assertions.assertEquals(1, manager.noOfAvailableVehicles("Car"));
+                Assertions.assertEquals(2, manager.fleetTable().size());
+                Assertions.assertFalse(VehicleID.isIssued(carID));
+                Assertions.assertTrue(car.isHired()); // A retired vehicle is never hired out again.
+                try {
+                    manager.retireVehicle(carID);
+                    Assertions.assertNotReached();
+                } catch (Throwable t) {
+                    Assertions.assertExpectedThrowable(IllegalArgumentException.class, t);
+                }
+                Assertions.assertTrue(manager.hireVehicle(driver, "Car", 1));
+                Assertions.assertTrue(spare.isHired());
+
+                //the freed ID is the only car ID left, so the next car is issued it
+                reissued = manager.addVehicle("Car");
+            } finally {
+                for (VehicleID id : taken)
+                    VehicleID.release(id);
+            }
+            Assertions.assertEquals(carID, reissued.getVehicleID());
+            Assertions.assertTrue(manager.getVehicle(carID) == reissued);
+            Assertions.assertFalse(reissued.isHired());
+            manager.closeJournal();
+
+            //replay drops the retired vehicle and gives its ID to the later one
+            resetManagerState();
+            manager.openJournal(dir, Journal.SyncPolicy.NONE);
+            Assertions.assertEquals(3, manager.getAllVehicles().size());
+            Assertions.assertEquals(carID, manager.getAllVehicles().get(2).getVehicleID());
+            Assertions.assertFalse(manager.getVehicle(carID).isHired());
+            Assertions.assertEquals(3, manager.fleetTable().size());
+            manager.closeJournal();
+            deleteDirectory(dir);
+
+            //a reopened store skips retired records and leaves their IDs free
+            resetManagerState();
+            dir = Files.createTempDirectory("fleet");
+            Path file = dir.resolve("vehicles.store");
+            manager.openStore(file, 4);
+            Vehicle stored = manager.addVehicle("Van");
+            Vehicle kept = manager.addVehicle("Van");
+            Assertions.assertTrue(manager.retireVehicle(stored.getVehicleID()));
+            manager.closeStore();
+            resetManagerState();
+            Assertions.assertEquals(1, manager.openStore(file, 4));
+            Assertions.assertTrue(manager.getVehicle(stored.getVehicleID()) == null);
+            Assertions.assertFalse(VehicleID.isIssued(stored.getVehicleID()));
+            Assertions.assertEquals(kept.getVehicleID(), manager.getAllVehicles().get(0).getVehicleID());
+            Assertions.assertEquals(1, manager.fleetTable().size());
+        } catch (IOException e) {
+            throw new AssertionError("Retire I/O failed", e);
+        } finally {
+            resetManagerState();
+            deleteDirectory(dir);
+        }
+
+        System.out.println("Retire vehicle test passed.\n" + line);
+    }
+
+    /**
+     * Lists the journal segments in a directory, oldest first.
+     *
+     * @param dir The journal directory.
+     * @return The segment files.
+     * @throws IOException if the directory cannot be read.
+     */
+    private static List<Path> journalSegments(Path dir) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "journal-*.log")) {
+            for (Path file : files)
+                segments.add(file);
+        }
+        Collections.sort(segments);
+        return segments;
+    }
+
+    /**
+     * Deletes a temporary directory and the files in it.
+     *
+     * @param dir The directory, or null.
+     */
+    private static void deleteDirectory(Path dir) {
+        if (dir == null)
+            return;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path file : files)
+                Files.deleteIfExists(file);
+            Files.deleteIfExists(dir);
+        } catch (IOException e) {
+            // Temporary files; nothing else to do.
+        }
+    }
+}
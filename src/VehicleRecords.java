@@ -0,0 +1,75 @@
+/**
+ * VehicleRecords - Fixed-width vehicle records addressed by record number.
+ * Each record holds a vehicle's packed ID, its service distance and its state word.
+ * Vehicles created over records are views that hold the records, their record
+ * number and their ID, so the fleet's changing values live in the records rather
+ * than in objects.
+ * Records are only ever appended; a retired vehicle keeps its record, marked retired
+ * in its state word, and is left out of fleet tables and reopened stores.
+ *
+ * @author Ziyue Ren
+ * @see VehicleStore
+ * @see FleetColumns
+ * @see AbstractVehicle
+ */
+abstract class VehicleRecords {
+
+    /**
+     * Appends a record for a new vehicle, which starts not hired, with no mileage and no inspection due.
+     *
+     * @param id                  The issued ID of the vehicle.
+     * @param distanceRequirement The service distance of the vehicle.
+     * @return The record number.
+     * @throws IllegalStateException if there is no room for another record.
+     */
+    abstract int allocate(VehicleID id, int distanceRequirement);
+
+    /**
+     * Returns the number of records in use.
+     *
+     * @return The record count.
+     */
+    abstract int size();
+
+    /**
+     * Returns the packed ID held in a record.
+     *
+     * @param record The record number.
+     * @return The packed vehicle ID.
+     */
+    abstract int packedIdAt(int record);
+
+    /**
+     * Returns the service distance held in a record.
+     *
+     * @param record The record number.
+     * @return The service distance.
+     */
+    abstract int distanceAt(int record);
+
+    /**
+     * Reads the state word of a record.
+     *
+     * @param record The record number.
+     * @return The state word, see VehicleState.
+     */
+    abstract long state(int record);
+
+    /**
+     * Atomically replaces the state word of a record if it still holds the expected value.
+     *
+     * @param record   The record number.
+     * @param expected The state word the caller read.
+     * @param update   The new state word.
+     * @return True if the record was updated, false if its state had changed.
+     */
+    abstract boolean compareAndSetState(int record, long expected, long update);
+
+    /**
+     * Replaces the state word of a record.
+     *
+     * @param record The record number.
+     * @param state  The new state word.
+     */
+    abstract void setState(int record, long state);
+}
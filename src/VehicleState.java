@@ -0,0 +1,127 @@
+/**
+ * VehicleState - Static helpers for the packed state word of a vehicle.
+ * The low 32 bits hold the current mileage, bit 32 is the hired flag,
+ * bit 33 is the van inspection flag and bit 34 marks a retired vehicle.
+ * A retired vehicle also keeps its hired flag set, so it is never hired,
+ * returned or pooled again. Reading the word once gives a consistent view
+ * of all the values.
+ *
+ * @author Ziyue Ren
+ * @see Vehicle#getState()
+ * @see AbstractVehicle
+ */
+public final class VehicleState {
+    private static final long MILEAGE_MASK = 0xFFFFFFFFL;
+    private static final long HIRED = 1L << 32;
+    private static final long CHECK = 1L << 33;
+    private static final long RETIRED = 1L << 34;
+
+    private VehicleState() { }
+
+    /**
+     * Packs the given values into a state word.
+     *
+     * @param mileage The current mileage, must not be negative.
+     * @param hired   Whether the vehicle is hired.
+     * @param check   Whether the vehicle needs an inspection.
+     * @return The packed state word.
+     */
+    public static long pack(int mileage, boolean hired, boolean check) {
+        return (mileage & MILEAGE_MASK) | (hired ? HIRED : 0) | (check ? CHECK : 0);
+    }
+
+    /**
+     * Returns the mileage held in a state word.
+     *
+     * @param state The packed state word.
+     * @return The current mileage.
+     */
+    public static int mileage(long state) {
+        return (int) (state & MILEAGE_MASK);
+    }
+
+    /**
+     * Returns whether a state word has the hired flag set.
+     *
+     * @param state The packed state word.
+     * @return True if the vehicle is hired, false otherwise.
+     */
+    public static boolean isHired(long state) {
+        return (state & HIRED) != 0;
+    }
+
+    /**
+     * Returns whether a state word has the inspection flag set.
+     *
+     * @param state The packed state word.
+     * @return True if the vehicle needs an inspection, false otherwise.
+     */
+    public static boolean needsCheck(long state) {
+        return (state & CHECK) != 0;
+    }
+
+    /**
+     * Returns whether a state word has the retired flag set.
+     *
+     * @param state The packed state word.
+     * @return True if the vehicle is retired, false otherwise.
+     */
+    public static boolean isRetired(long state) {
+        return (state & RETIRED) != 0;
+    }
+
+    /**
+     * Returns whether a vehicle in the given state can be hired: not hired,
+     * below its service distance and not awaiting an inspection.
+     *
+     * @param state               The packed state word.
+     * @param distanceRequirement The service distance of the vehicle.
+     * @return True if the vehicle can be hired, false otherwise.
+     */
+    public static boolean isHireable(long state, int distanceRequirement) {
+        return (state & (HIRED | CHECK)) == 0 && mileage(state) < distanceRequirement;
+    }
+
+    /**
+     * Returns a copy of a state word with the mileage replaced.
+     *
+     * @param state   The packed state word.
+     * @param mileage The new mileage, must not be negative.
+     * @return The updated state word.
+     */
+    public static long withMileage(long state, int mileage) {
+        return (state & ~MILEAGE_MASK) | (mileage & MILEAGE_MASK);
+    }
+
+    /**
+     * Returns a copy of a state word with the hired flag set or cleared.
+     *
+     * @param state The packed state word.
+     * @param hired The new hired flag.
+     * @return The updated state word.
+     */
+    public static long withHired(long state, boolean hired) {
+        return hired ? state | HIRED : state & ~HIRED;
+    }
+
+    /**
+     * Returns a copy of a state word with the inspection flag set or cleared.
+     *
+     * @param state The packed state word.
+     * @param check The new inspection flag.
+     * @return The updated state word.
+     */
+    public static long withCheck(long state, boolean check) {
+        return check ? state | CHECK : state & ~CHECK;
+    }
+
+    /**
+     * Returns a copy of a state word marked as retired: the retired and hired flags are both set.
+     *
+     * @param state The packed state word.
+     * @return The updated state word.
+     */
+    public static long retired(long state) {
+        return state | RETIRED | HIRED;
+    }
+}
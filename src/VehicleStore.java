@@ -0,0 +1,255 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * VehicleStore - Keeps vehicle records in a memory-mapped file instead of on the heap.
+ * Each vehicle is one fixed-width record holding its packed ID (type and code),
+ * its service distance and its state word (mileage, hired and inspection flags).
+ * Vehicles backed by a store are views that hold the store, their record number
+ * and the ID read from the record when the view is created, and read their service
+ * distance and state from the record on each call.
+ * Every state change is a compare-and-set on the mapped record, so the fleet is
+ * already on disk when the process stops and is reopened without deserialising.
+ * The manager still indexes each view by ID, so the heap cost per vehicle is the
+ * view and its index entries.
+ * <p>
+ * Layout: a 16-byte header (magic, format, capacity and record count), then
+ * 16-byte records: packed ID (int), service distance (int), state word (long).
+ * State words are 8-byte aligned so they can be updated atomically. Values are
+ * in the machine's native byte order; a store from a machine with the other
+ * order is refused. The capacity is fixed when the file is created.
+ *
+ * @author Ziyue Ren
+ * @see AbstractVehicle
+ * @see VehicleRecords
+ * @see VehicleState
+ */
+public final class VehicleStore extends VehicleRecords implements Closeable {
+    private static final int MAGIC = 0x464C5453; // "FLTS"
+    private static final int FORMAT = 1;
+    private static final int HEADER = 16;
+    private static final int RECORD = 16;
+    private static final int CAPACITY_AT = 8;
+    private static final int COUNT_AT = 12;
+    private static final int ID_AT = 0;
+    private static final int DISTANCE_AT = 4;
+    private static final int STATE_AT = 8;
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+    private static final VarHandle INTS = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+
+    private final Path file;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private int count; // Records in use; guarded by this.
+
+    /**
+     * Maps an opened store file.
+     *
+     * @param file     The store file.
+     * @param channel  The open channel to the file.
+     * @param buffer   The mapping of the whole file.
+     * @param capacity The number of records the file can hold.
+     * @param count    The number of records in use.
+     */
+    private VehicleStore(Path file, FileChannel channel, MappedByteBuffer buffer, int capacity, int count) {
+        this.file = file;
+        this.channel = channel;
+        this.buffer = buffer;
+        this.capacity = capacity;
+        this.count = count;
+    }
+
+    /**
+     * Opens a store file, creating it with the given capacity if it does not exist or is empty.
+     * An existing file keeps the capacity it was created with.
+     *
+     * @param file     The store file.
+     * @param capacity The number of records a new file can hold.
+     * @return The open store.
+     * @throws IOException              if the file cannot be opened or is not a valid store.
+     * @throws IllegalArgumentException if capacity is not positive or too large to map.
+     */
+    public static VehicleStore open(Path file, int capacity) throws IOException {
+        if (capacity <= 0 || capacity > (Integer.MAX_VALUE - HEADER) / RECORD)
+            throw new IllegalArgumentException("Invalid store capacity: " + capacity);
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            long size = channel.size();
+            if (size == 0) {
+                size = HEADER + (long) capacity * RECORD;
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                buffer.order(ByteOrder.nativeOrder());
+                buffer.putInt(0, MAGIC);
+                buffer.putInt(4, FORMAT);
+                buffer.putInt(CAPACITY_AT, capacity);
+                buffer.putInt(COUNT_AT, 0);
+                buffer.force();
+                return new VehicleStore(file, channel, buffer, capacity, 0);
+            }
+            if (size < HEADER || size > Integer.MAX_VALUE)
+                throw new IOException("Not a vehicle store: " + file);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.order(ByteOrder.nativeOrder());
+            if (buffer.getInt(0) != MAGIC) {
+                if (Integer.reverseBytes(buffer.getInt(0)) == MAGIC)
+                    throw new IOException("Vehicle store was written with the other byte order: " + file);
+                throw new IOException("Not a vehicle store: " + file);
+            }
+            if (buffer.getInt(4) != FORMAT)
+                throw new IOException("Unsupported vehicle store format " + buffer.getInt(4) + ": " + file);
+            int storedCapacity = buffer.getInt(CAPACITY_AT);
+            int storedCount = buffer.getInt(COUNT_AT);
+            if (storedCapacity <= 0 || size < HEADER + (long) storedCapacity * RECORD
+                    || storedCount < 0 || storedCount > storedCapacity)
+                throw new IOException("Vehicle store header is damaged: " + file);
+            return new VehicleStore(file, channel, buffer, storedCapacity, storedCount);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Appends a record for a new vehicle, which starts not hired, with no mileage and no inspection due.
+     * The record is written before the count is raised, so a crash never exposes a partial record.
+     *
+     * @param id                  The issued ID of the vehicle.
+     * @param distanceRequirement The service distance of the vehicle.
+     * @return The record number.
+     * @throws IllegalStateException if the store is full.
+     */
+    @Override
+    public synchronized int allocate(VehicleID id, int distanceRequirement) {
+        if (count == capacity)
+            throw new IllegalStateException("Vehicle store is full (" + capacity + " records): " + file);
+        int record = count;
+        int at = offset(record);
+        buffer.putInt(at + ID_AT, id.packed());
+        buffer.putInt(at + DISTANCE_AT, distanceRequirement);
+        LONGS.setVolatile(buffer, at + STATE_AT, VehicleState.pack(0, false, false));
+        count = record + 1;
+        INTS.setVolatile(buffer, COUNT_AT, count);
+        return record;
+    }
+
+    /**
+     * Returns the number of records in use.
+     *
+     * @return The record count.
+     */
+    @Override
+    public synchronized int size() {
+        return count;
+    }
+
+    /**
+     * Returns the number of records the store can hold.
+     *
+     * @return The capacity.
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the ID held in a record.
+     *
+     * @param record The record number.
+     * @return The vehicle ID.
+     * @throws IllegalArgumentException if the record does not hold a valid ID.
+     */
+    public VehicleID idAt(int record) {
+        return VehicleID.fromPacked(packedIdAt(record));
+    }
+
+    @Override
+    int packedIdAt(int record) {
+        return buffer.getInt(offset(record) + ID_AT);
+    }
+
+    /**
+     * Returns the service distance held in a record.
+     *
+     * @param record The record number.
+     * @return The service distance.
+     */
+    @Override
+    public int distanceAt(int record) {
+        return buffer.getInt(offset(record) + DISTANCE_AT);
+    }
+
+    /**
+     * Reads the state word of a record.
+     *
+     * @param record The record number.
+     * @return The state word, see VehicleState.
+     */
+    @Override
+    long state(int record) {
+        return (long) LONGS.getVolatile(buffer, offset(record) + STATE_AT);
+    }
+
+    /**
+     * Atomically replaces the state word of a record if it still holds the expected value.
+     *
+     * @param record   The record number.
+     * @param expected The state word the caller read.
+     * @param update   The new state word.
+     * @return True if the record was updated, false if its state had changed.
+     */
+    @Override
+    boolean compareAndSetState(int record, long expected, long update) {
+        return LONGS.compareAndSet(buffer, offset(record) + STATE_AT, expected, update);
+    }
+
+    /**
+     * Replaces the state word of a record.
+     *
+     * @param record The record number.
+     * @param state  The new state word.
+     */
+    @Override
+    void setState(int record, long state) {
+        LONGS.setVolatile(buffer, offset(record) + STATE_AT, state);
+    }
+
+    /**
+     * Returns the offset of a record in the file.
+     *
+     * @param record The record number.
+     * @return The byte offset of the record.
+     */
+    private static int offset(int record) {
+        return HEADER + record * RECORD;
+    }
+
+    /**
+     * Forces every record to disk. Without this, changes reach the file when the
+     * operating system writes the mapped pages, which survives a process crash
+     * but not a machine failure.
+     */
+    public void force() {
+        buffer.force();
+    }
+
+    /**
+     * Forces the records to disk and closes the file. The mapping stays readable
+     * until it is garbage collected, but later changes are not forced.
+     *
+     * @throws IOException if the file cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        force();
+        channel.close();
+    }
+}
@@ -0,0 +1,116 @@
+/**
+ * VehicleType - The kinds of vehicle in the rental system.
+ * Each type carries its service distance and the rules for its IDs, so code
+ * that needs them can switch on the type or index arrays by ordinal instead
+ * of comparing type names.
+ *
+ * @author Ziyue Ren
+ * @see Vehicle
+ * @see VehicleID
+ */
+public enum VehicleType {
+    CAR("Car", 10000, 'C', 0),
+    VAN("Van", 5000, 'V', 1);
+
+    private static final VehicleType[] TYPES = values();
+
+    private final String name;
+    private final int serviceDistance;
+    private final char idPrefix;
+    private final int idParity;
+
+    /**
+     * Constructor for VehicleType.
+     *
+     * @param name            The display name of the type.
+     * @param serviceDistance The distance between services.
+     * @param idPrefix        The first character of IDs for the type.
+     * @param idParity        0 if ID numbers are even, 1 if they are odd.
+     */
+    VehicleType(String name, int serviceDistance, char idPrefix, int idParity) {
+        this.name = name;
+        this.serviceDistance = serviceDistance;
+        this.idPrefix = idPrefix;
+        this.idParity = idParity;
+    }
+
+    /**
+     * Returns the type with the given name, ignoring case.
+     *
+     * @param name The type name, e.g. "Car" or "van".
+     * @return The vehicle type.
+     * @throws IllegalArgumentException if the name is null or not a vehicle type.
+     */
+    public static VehicleType of(String name) {
+        VehicleType type = lookup(name);
+        if (type == null)
+            throw new IllegalArgumentException("Invalid vehicle type: " + name);
+        return type;
+    }
+
+    /**
+     * Returns the type with the given name, ignoring case, or null if there is none.
+     *
+     * @param name The type name, e.g. "Car" or "van".
+     * @return The vehicle type, or null if the name is null or not a vehicle type.
+     */
+    public static VehicleType lookup(String name) {
+        if (name != null) {
+            for (VehicleType type : TYPES) {
+                if (type.name.equalsIgnoreCase(name))
+                    return type;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the type whose IDs start with the given character.
+     *
+     * @param prefix The first character of an ID.
+     * @return The vehicle type, or null if no type uses that prefix.
+     */
+    public static VehicleType fromIdPrefix(char prefix) {
+        for (VehicleType type : TYPES) {
+            if (type.idPrefix == prefix)
+                return type;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the display name of the type.
+     *
+     * @return "Car" or "Van".
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the distance a vehicle of this type may travel between services.
+     *
+     * @return The service distance.
+     */
+    public int getServiceDistance() {
+        return serviceDistance;
+    }
+
+    /**
+     * Returns the first character of IDs for this type.
+     *
+     * @return 'C' for cars, 'V' for vans.
+     */
+    public char getIdPrefix() {
+        return idPrefix;
+    }
+
+    /**
+     * Returns the parity of ID numbers for this type.
+     *
+     * @return 0 if ID numbers are even, 1 if they are odd.
+     */
+    public int getIdParity() {
+        return idParity;
+    }
+}